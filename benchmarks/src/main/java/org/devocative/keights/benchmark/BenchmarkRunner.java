@@ -0,0 +1,20 @@
+package org.devocative.keights.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Same as the JMH main, with the GC profiler always on to report the allocation rate
+ */
+public class BenchmarkRunner {
+	public static void main(String[] args) throws Exception {
+		final var options = new OptionsBuilder()
+			.parent(new CommandLineOptions(args))
+			.addProfiler(GCProfiler.class)
+			.build();
+
+		new Runner(options).run();
+	}
+}
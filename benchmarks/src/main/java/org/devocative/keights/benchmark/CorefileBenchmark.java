@@ -0,0 +1,63 @@
+package org.devocative.keights.benchmark;
+
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.dto.RewriteRequest;
+import org.devocative.keights.service.CoreDNSService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.devocative.keights.benchmark.CorefileGenerator.*;
+import static org.devocative.keights.dto.EEventType.Added;
+import static org.devocative.keights.dto.EEventType.Updated;
+
+/**
+ * Cost of parsing a Corefile (once per ConfigMap version) and of looking up a rewrite, by rewrite-set size
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CorefileBenchmark {
+	@Param({"10", "1000", "10000", "50000"})
+	private int rewrites;
+
+	private String[] corefiles;
+	private RewriteRequest[] lookups;
+	private CoreDNSService coreDNSService;
+	private int round;
+
+	// ------------------------------
+
+	@Setup(Level.Trial)
+	public void setup() {
+		// Two versions, so each call is a new ConfigMap version and is really parsed
+		corefiles = new String[]{generate(rewrites, 0), generate(rewrites, 1)};
+
+		final var random = new SplittableRandom(rewrites);
+		lookups = new RewriteRequest[1024];
+		for (int i = 0; i < lookups.length; i++) {
+			final var n = random.nextInt(rewrites * 2);
+			lookups[i] = new RewriteRequest(domain(n, 0), service(n), namespace(n));
+		}
+
+		coreDNSService = new CoreDNSService(new CoreDNSProperties());
+		coreDNSService.handleCoreDNSConfigMap(Added, corefiles[0]);
+	}
+
+	// ------------------------------
+
+	@Benchmark
+	public int handleCoreDNSConfigMap() {
+		coreDNSService.handleCoreDNSConfigMap(Updated, corefiles[++round & 1]);
+		return coreDNSService.getRewritesSize();
+	}
+
+	@Benchmark
+	public boolean hasRewrite() {
+		return coreDNSService.hasRewrite(lookups[++round & (lookups.length - 1)]);
+	}
+}
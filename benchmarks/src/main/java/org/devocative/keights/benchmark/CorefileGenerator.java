@@ -0,0 +1,66 @@
+package org.devocative.keights.benchmark;
+
+import java.util.Map;
+
+public final class CorefileGenerator {
+	public static final String CLUSTER_DOMAIN = "cluster.local";
+
+	private CorefileGenerator() {
+	}
+
+	// ------------------------------
+
+	/**
+	 * A default CoreDNS Corefile with the given number of rewrites, the variant changes the first rewrite only
+	 */
+	public static String generate(int rewrites, int variant) {
+		final var builder = new StringBuilder(rewrites * 80 + 512);
+		builder.append(".:53 {\n");
+		for (int i = 0; i < rewrites; i++) {
+			builder
+				.append("    rewrite name ")
+				.append(i == 0 && variant > 0 ? domain(i, variant) : domain(i, 0))
+				.append(' ')
+				.append(service(i))
+				.append('.')
+				.append(namespace(i))
+				.append(".svc.")
+				.append(CLUSTER_DOMAIN)
+				.append('\n');
+		}
+		builder.append(
+			"    errors\n" +
+				"    health {\n" +
+				"        lameduck 5s\n" +
+				"    }\n" +
+				"    ready\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"        fallthrough in-addr.arpa ip6.arpa\n" +
+				"    }\n" +
+				"    prometheus :9153\n" +
+				"    forward . \"/etc/resolv.conf\"\n" +
+				"    cache 30\n" +
+				"    loop\n" +
+				"    reload\n" +
+				"    loadbalance\n" +
+				"}\n");
+		return builder.toString();
+	}
+
+	public static String domain(int i, int round) {
+		return round == 0 ? "app" + i + ".site.wsx" : "app" + i + "-r" + round + ".site.wsx";
+	}
+
+	public static String service(int i) {
+		return "svc" + i;
+	}
+
+	public static String namespace(int i) {
+		return "ns" + (i % 50);
+	}
+
+	public static Map<String, String> annotations(String annotation, int i, int round) {
+		return Map.of(annotation, domain(i, round));
+	}
+}
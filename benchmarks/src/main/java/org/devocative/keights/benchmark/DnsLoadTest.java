@@ -0,0 +1,219 @@
+package org.devocative.keights.benchmark;
+
+import io.kubernetes.client.informer.cache.Cache;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.service.DnsRecords;
+import org.devocative.keights.service.DnsResponder;
+import org.devocative.keights.service.ServiceCache;
+import org.devocative.keights.service.ServiceEndpoints;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * UDP load test of the DNS responder on localhost. By default an embedded responder is started with generated
+ * records, '--target host:port' runs against a running one (e.g. a port-forwarded pod).
+ * <pre>
+ * java -cp target/benchmarks.jar org.devocative.keights.benchmark.DnsLoadTest \
+ *     [--threads 4] [--duration 10s] [--records 10000] [--target 127.0.0.1:5353]
+ * </pre>
+ * Each thread keeps one query in flight, so the latency is the round trip and the throughput is closed-loop.
+ */
+public class DnsLoadTest {
+	private static final int MAX_SAMPLES = 2_000_000;
+
+	public static void main(String[] args) throws Exception {
+		var threads = 4;
+		var duration = Duration.ofSeconds(10);
+		var records = 10_000;
+		String target = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch (args[i]) {
+				case "--threads":
+					threads = Integer.parseInt(args[i + 1]);
+					break;
+				case "--duration":
+					duration = Duration.parse("PT" + args[i + 1].toUpperCase());
+					break;
+				case "--records":
+					records = Integer.parseInt(args[i + 1]);
+					break;
+				case "--target":
+					target = args[i + 1];
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown Option: " + args[i]);
+			}
+		}
+
+		DnsResponder responder = null;
+		final InetSocketAddress address;
+		if (target == null) {
+			responder = embedded(records);
+			address = new InetSocketAddress(InetAddress.getLoopbackAddress(), responder.getPort());
+		} else {
+			final var hostPort = target.split(":");
+			address = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+		}
+
+		final var queries = new byte[records][];
+		for (int i = 0; i < records; i++) {
+			queries[i] = query(CorefileGenerator.domain(i, 0));
+		}
+
+		System.out.printf("DNS Load Test: target=%s threads=%s duration=%s records=%s%n", address, threads, duration, records);
+		final var result = run(address, queries, threads, duration);
+		result.print(duration);
+
+		if (responder != null) {
+			responder.stop();
+		}
+	}
+
+	// ------------------------------
+
+	private static DnsResponder embedded(int records) {
+		final var cache = new Cache<V1Service>();
+		final var serviceCache = new ServiceCache();
+		serviceCache.register(cache);
+		final var properties = new CoreDNSProperties();
+		final var dnsRecords = new DnsRecords(serviceCache, new ServiceEndpoints(properties));
+
+		for (int i = 0; i < records; i++) {
+			final var name = CorefileGenerator.service(i);
+			final var namespace = CorefileGenerator.namespace(i);
+			cache.add(new V1Service()
+				.metadata(new V1ObjectMeta().name(name).namespace(namespace))
+				.spec(new V1ServiceSpec().clusterIP(String.format("10.96.%s.%s", (i >> 8) & 0xFF, i & 0xFF))));
+			dnsRecords.update(namespace, name, CorefileGenerator.domain(i, 0));
+		}
+
+		properties.getResponder().setBindAddress("127.0.0.1");
+		properties.getResponder().setPort(0);
+		final var responder = new DnsResponder(properties, dnsRecords);
+		responder.start();
+		return responder;
+	}
+
+	private static Result run(InetSocketAddress address, byte[][] queries, int threads, Duration duration) throws InterruptedException {
+		final var start = new CountDownLatch(1);
+		final var results = new ArrayList<Result>();
+		final var workers = new ArrayList<Thread>();
+
+		for (int t = 0; t < threads; t++) {
+			final var result = new Result(MAX_SAMPLES / threads);
+			final var offset = t * queries.length / threads;
+			results.add(result);
+
+			final var worker = new Thread(() -> {
+				try (var socket = new DatagramSocket()) {
+					socket.setSoTimeout(1000);
+					socket.connect(address);
+					final var response = new DatagramPacket(new byte[512], 512);
+					final var requests = new DatagramPacket[queries.length];
+					for (int i = 0; i < queries.length; i++) {
+						requests[i] = new DatagramPacket(queries[i], queries[i].length);
+					}
+
+					start.await();
+					final var deadline = System.nanoTime() + duration.toNanos();
+					for (int i = offset; System.nanoTime() < deadline; i++) {
+						final var sent = System.nanoTime();
+						socket.send(requests[i % requests.length]);
+						try {
+							socket.receive(response);
+							result.record(System.nanoTime() - sent, response.getData()[3] & 0xF);
+						} catch (SocketTimeoutException e) {
+							result.timeouts++;
+						}
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}, "dns-load-" + t);
+			worker.start();
+			workers.add(worker);
+		}
+
+		start.countDown();
+		for (final var worker : workers) {
+			worker.join();
+		}
+
+		final var total = new Result(0);
+		results.forEach(total::merge);
+		return total;
+	}
+
+	private static byte[] query(String name) {
+		final var buffer = ByteBuffer.allocate(512);
+		buffer.putShort((short) 0x1234).putShort((short) 0x0100).putShort((short) 1).putShort((short) 0).putInt(0);
+		for (final var label : name.split("\\.")) {
+			buffer.put((byte) label.length()).put(label.getBytes());
+		}
+		buffer.put((byte) 0).putShort((short) 1).putShort((short) 1);
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	// ------------------------------
+
+	private static class Result {
+		private long[] latencies;
+		private int samples = 0;
+		private long responses = 0;
+		private long errors = 0;
+		private long timeouts = 0;
+
+		private Result(int capacity) {
+			latencies = new long[capacity];
+		}
+
+		private void record(long latency, int rcode) {
+			responses++;
+			if (rcode != 0) {
+				errors++;
+			}
+			if (samples < latencies.length) {
+				latencies[samples++] = latency;
+			}
+		}
+
+		private void merge(Result other) {
+			final var merged = Arrays.copyOf(latencies, samples + other.samples);
+			System.arraycopy(other.latencies, 0, merged, samples, other.samples);
+			latencies = merged;
+			samples = merged.length;
+			responses += other.responses;
+			errors += other.errors;
+			timeouts += other.timeouts;
+		}
+
+		private void print(Duration duration) {
+			Arrays.sort(latencies, 0, samples);
+			System.out.printf("responses=%s errors=%s timeouts=%s qps=%.0f%n",
+				responses, errors, timeouts, responses / (duration.toMillis() / 1000.0));
+			System.out.printf("latency(us): p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+				percentile(0.5), percentile(0.99), percentile(0.999), percentile(1.0));
+		}
+
+		private double percentile(double p) {
+			if (samples == 0) {
+				return 0;
+			}
+			final var index = Math.min(samples - 1, (int) Math.ceil(p * samples) - 1);
+			return latencies[Math.max(0, index)] / 1000.0;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package org.devocative.keights.benchmark;
+
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.service.CoreDNSService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.devocative.keights.benchmark.CorefileGenerator.*;
+import static org.devocative.keights.dto.EEventType.Added;
+import static org.devocative.keights.dto.EEventType.Updated;
+
+/**
+ * Cost of queueing a burst of service events and of flushing it to a new Corefile, by rewrite-set size and burst size
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+	@Param({"10", "1000", "10000", "50000"})
+	private int rewrites;
+
+	@Param({"1", "100", "10000"})
+	private int burst;
+
+	private String corefile;
+	private String annotation;
+	private Map<String, String>[] oldAnnotations;
+	private Map<String, String>[] newAnnotations;
+	private CoreDNSService coreDNSService;
+	private int round;
+
+	// ------------------------------
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		final var properties = new CoreDNSProperties();
+		annotation = properties.getRewriteConfig().getAnnotation();
+		corefile = generate(rewrites, 0);
+
+		oldAnnotations = new Map[burst];
+		newAnnotations = new Map[burst];
+		for (int i = 0; i < burst; i++) {
+			oldAnnotations[i] = annotations(annotation, i, 0);
+			newAnnotations[i] = annotations(annotation, i, 1);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void iteration() {
+		coreDNSService = new CoreDNSService(new CoreDNSProperties());
+		coreDNSService.handleCoreDNSConfigMap(Added, corefile);
+		round = 0;
+	}
+
+	// ------------------------------
+
+	@Benchmark
+	public boolean handleService() {
+		var added = false;
+		for (int i = 0; i < burst; i++) {
+			added |= coreDNSService.handleService(Updated, service(i), namespace(i), oldAnnotations[i], newAnnotations[i]);
+		}
+		return added;
+	}
+
+	// ------------------------------
+
+	@State(Scope.Thread)
+	public static class Flush {
+		@Setup(Level.Invocation)
+		public void queue(RequestBenchmark benchmark) {
+			final var round = ++benchmark.round;
+
+			// Each flush moves every service of the burst to a new domain, so there is always something to write
+			for (int i = 0; i < benchmark.burst; i++) {
+				benchmark.coreDNSService.handleService(
+					Updated,
+					service(i),
+					namespace(i),
+					annotations(benchmark.annotation, i, round - 1),
+					annotations(benchmark.annotation, i, round));
+			}
+		}
+	}
+
+	@Benchmark
+	public Optional<String> processRequests(Flush flush) {
+		final var result = coreDNSService.processRequests();
+		coreDNSService.commitRequests();
+		return result;
+	}
+}
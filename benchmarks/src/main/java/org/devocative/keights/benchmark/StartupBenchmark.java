@@ -0,0 +1,277 @@
+package org.devocative.keights.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.kubernetes.client.openapi.JSON;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.openapi.models.V1ConfigMapList;
+import io.kubernetes.client.openapi.models.V1Endpoint;
+import io.kubernetes.client.openapi.models.V1EndpointConditions;
+import io.kubernetes.client.openapi.models.V1EndpointSlice;
+import io.kubernetes.client.openapi.models.V1EndpointSliceList;
+import io.kubernetes.client.openapi.models.V1ListMeta;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceList;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import io.kubernetes.client.openapi.models.V1Status;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to first reconcile: a fake API server serves a CoreDNS ConfigMap, annotated services and a ready EndpointSlice
+ * of each service, then the given
+ * command is started with a kubeconfig of the fake server, and the time until its first ConfigMap PATCH is measured.
+ * <pre>
+ * java -cp target/benchmarks.jar org.devocative.keights.benchmark.StartupBenchmark \
+ *     [--runs 5] [--services 1000] [--timeout 60s] -- java -jar ../target/keights-0.0.1-SNAPSHOT-exec.jar
+ * </pre>
+ * The output of each run is written to target/startup-N.log.
+ */
+public class StartupBenchmark {
+	private static final String ANNOTATION = "keights.coredns.rewrite/domain-name";
+	private static final String CONFIG_MAPS = "/api/v1/namespaces/kube-system/configmaps";
+	private static final String CORE_DNS = CONFIG_MAPS + "/coredns";
+	private static final String SERVICES = "/api/v1/services";
+	private static final String ENDPOINT_SLICES = "/apis/discovery.k8s.io/v1/endpointslices";
+
+	public static void main(String[] args) throws Exception {
+		var runs = 5;
+		var services = 1000;
+		var timeout = Duration.ofSeconds(60);
+
+		var i = 0;
+		for (; i + 1 < args.length && !args[i].equals("--"); i += 2) {
+			switch (args[i]) {
+				case "--runs":
+					runs = Integer.parseInt(args[i + 1]);
+					break;
+				case "--services":
+					services = Integer.parseInt(args[i + 1]);
+					break;
+				case "--timeout":
+					timeout = Duration.parse("PT" + args[i + 1].toUpperCase());
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown Option: " + args[i]);
+			}
+		}
+		if (i >= args.length || !args[i].equals("--") || i + 1 == args.length) {
+			throw new IllegalArgumentException("Missing Command: -- <command> [args]");
+		}
+		final var command = List.of(Arrays.copyOfRange(args, i + 1, args.length));
+
+		System.out.printf("Startup Benchmark: runs=%s services=%s command=%s%n", runs, services, String.join(" ", command));
+		final var times = new ArrayList<Long>();
+		for (int run = 1; run <= runs; run++) {
+			try (var server = new FakeApiServer(services)) {
+				final var millis = run(server, command, run, timeout);
+				if (millis < 0) {
+					System.out.printf("run=%s timeout, see target/startup-%s.log%n", run, run);
+				} else {
+					System.out.printf("run=%s firstReconcile=%sms rss=%sMB%n", run, millis, server.rssMB);
+					times.add(millis);
+				}
+			}
+		}
+
+		if (!times.isEmpty()) {
+			Collections.sort(times);
+			System.out.printf("firstReconcile(ms): min=%s median=%s max=%s%n",
+				times.get(0), times.get(times.size() / 2), times.get(times.size() - 1));
+		}
+	}
+
+	// ------------------------------
+
+	private static long run(FakeApiServer server, List<String> command, int run, Duration timeout) throws Exception {
+		final var kubeconfig = Files.createTempFile("keights-kubeconfig", ".yml");
+		Files.writeString(kubeconfig, String.format(
+			"apiVersion: v1\n" +
+				"kind: Config\n" +
+				"clusters:\n" +
+				"- name: fake\n" +
+				"  cluster:\n" +
+				"    server: http://127.0.0.1:%s\n" +
+				"users:\n" +
+				"- name: fake\n" +
+				"  user:\n" +
+				"    token: fake\n" +
+				"contexts:\n" +
+				"- name: fake\n" +
+				"  context:\n" +
+				"    cluster: fake\n" +
+				"    user: fake\n" +
+				"current-context: fake\n", server.getPort()));
+
+		final var log = Path.of("target", "startup-" + run + ".log");
+		Files.createDirectories(log.getParent());
+		final var builder = new ProcessBuilder(command)
+			.redirectErrorStream(true)
+			.redirectOutput(log.toFile());
+		builder.environment().put("KUBECONFIG", kubeconfig.toString());
+
+		final var start = System.nanoTime();
+		final var process = builder.start();
+		server.pid = process.pid();
+		try {
+			if (!server.reconciled.await(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+				return -1;
+			}
+			return TimeUnit.NANOSECONDS.toMillis(server.reconciledNanos - start);
+		} finally {
+			process.destroy();
+			if (!process.waitFor(20, TimeUnit.SECONDS)) {
+				process.destroyForcibly();
+			}
+			Files.deleteIfExists(kubeconfig);
+		}
+	}
+
+	// ------------------------------
+
+	private static class FakeApiServer implements AutoCloseable {
+		private final JSON json = new JSON();
+		private final HttpServer server;
+		private final ExecutorService executor = Executors.newCachedThreadPool();
+		private final CountDownLatch closed = new CountDownLatch(1);
+		private final CountDownLatch reconciled = new CountDownLatch(1);
+		private final V1ConfigMapList configMaps;
+		private final V1ServiceList services;
+		private final V1EndpointSliceList endpointSlices;
+
+		private volatile long reconciledNanos;
+		private volatile long pid;
+		private volatile long rssMB = -1;
+
+		private FakeApiServer(int size) throws IOException {
+			configMaps = new V1ConfigMapList()
+				.metadata(new V1ListMeta().resourceVersion("1"))
+				.items(List.of(configMap(Map.of("Corefile", CorefileGenerator.generate(0, 0)), "1")));
+
+			final var items = new ArrayList<V1Service>(size);
+			final var slices = new ArrayList<V1EndpointSlice>(size);
+			for (int i = 0; i < size; i++) {
+				slices.add(new V1EndpointSlice()
+					.metadata(new V1ObjectMeta()
+						.name(CorefileGenerator.service(i) + "-abcde")
+						.namespace(CorefileGenerator.namespace(i))
+						.resourceVersion("1")
+						.labels(Map.of("kubernetes.io/service-name", CorefileGenerator.service(i))))
+					.addressType("IPv4")
+					.endpoints(List.of(new V1Endpoint()
+						.addresses(List.of(String.format("10.244.%s.%s", (i >> 8) & 0xFF, i & 0xFF)))
+						.conditions(new V1EndpointConditions().ready(true)))));
+				items.add(new V1Service()
+					.metadata(new V1ObjectMeta()
+						.name(CorefileGenerator.service(i))
+						.namespace(CorefileGenerator.namespace(i))
+						.uid("uid-" + i)
+						.resourceVersion("1")
+						.annotations(CorefileGenerator.annotations(ANNOTATION, i, 0)))
+					.spec(new V1ServiceSpec().clusterIP(String.format("10.96.%s.%s", (i >> 8) & 0xFF, i & 0xFF))));
+			}
+			services = new V1ServiceList()
+				.metadata(new V1ListMeta().resourceVersion("1"))
+				.items(items);
+			endpointSlices = new V1EndpointSliceList()
+				.metadata(new V1ListMeta().resourceVersion("1"))
+				.items(slices);
+
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+			server.setExecutor(executor);
+			server.createContext("/", this::handle);
+			server.start();
+		}
+
+		private int getPort() {
+			return server.getAddress().getPort();
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+			server.stop(0);
+			executor.shutdownNow();
+		}
+
+		private void handle(HttpExchange exchange) throws IOException {
+			try (exchange) {
+				final var path = exchange.getRequestURI().getPath();
+				final var query = String.valueOf(exchange.getRequestURI().getQuery());
+				final var method = exchange.getRequestMethod();
+
+				if (method.equals("GET") && query.contains("watch=true")) {
+					// Nothing changes, the watch is kept open until the run ends
+					exchange.getResponseHeaders().add("Content-Type", "application/json");
+					exchange.sendResponseHeaders(200, 0);
+					exchange.getResponseBody().flush();
+					closed.await();
+				} else if (method.equals("GET") && path.equals(CONFIG_MAPS)) {
+					send(exchange, 200, configMaps);
+				} else if (method.equals("GET") && path.equals(SERVICES)) {
+					send(exchange, 200, services);
+				} else if (method.equals("GET") && path.equals(ENDPOINT_SLICES)) {
+					send(exchange, 200, endpointSlices);
+				} else if (method.equals("GET") && path.equals(CORE_DNS)) {
+					send(exchange, 200, configMaps.getItems().get(0));
+				} else if (method.equals("PATCH") && path.equals(CORE_DNS)) {
+					reconciledNanos = System.nanoTime();
+					rssMB = rssMB();
+					final var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+					final V1ConfigMap patch = json.deserialize(body, V1ConfigMap.class);
+					send(exchange, 200, configMap(patch.getData(), "2"));
+					reconciled.countDown();
+				} else {
+					send(exchange, 404, new V1Status().status("Failure").code(404).reason("NotFound"));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void send(HttpExchange exchange, int code, Object body) throws IOException {
+			final var bytes = json.serialize(body).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(code, bytes.length);
+			exchange.getResponseBody().write(bytes);
+		}
+
+		private long rssMB() {
+			try {
+				for (final var line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+					if (line.startsWith("VmRSS:")) {
+						return Long.parseLong(line.replaceAll("\\D", "")) / 1024;
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				// Not on Linux, or a wrapper process
+			}
+			return -1;
+		}
+
+		private static V1ConfigMap configMap(Map<String, String> data, String resourceVersion) {
+			return new V1ConfigMap()
+				.metadata(new V1ObjectMeta()
+					.name("coredns")
+					.namespace("kube-system")
+					.resourceVersion(resourceVersion))
+				.data(data);
+		}
+	}
+}
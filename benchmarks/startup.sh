@@ -0,0 +1,39 @@
+#!/bin/bash
+# Time to first reconcile of the executable jar, of the unpacked jar with an AppCDS archive (as in the Dockerfile),
+# and of the native image if it is built, against a fake API server. Run 'mvn install' in the root and 'mvn package'
+# here before.
+
+set -e
+cd "$(dirname "$0")"
+
+RUNS="${RUNS:-5}"
+SERVICES="${SERVICES:-1000}"
+JAR="$(ls ../target/keights-*-exec.jar)"
+NATIVE="../target/keights"
+CDS="target/cds"
+APP_ARGS="--server.port=0 --management.server.port=0"
+BENCHMARK="java -cp target/benchmarks.jar org.devocative.keights.benchmark.StartupBenchmark --runs ${RUNS} --services ${SERVICES}"
+
+echo "=== jar"
+${BENCHMARK} -- java -jar "${JAR}" ${APP_ARGS}
+
+echo "=== cds"
+rm -rf "${CDS}" && mkdir -p "${CDS}/app"
+java -Djarmode=layertools -jar "${JAR}" extract --destination "${CDS}"
+mkdir "${CDS}/application/lib"
+jar cf "${CDS}/application/lib/keights.jar" -C "${CDS}/application/BOOT-INF/classes" .
+rm -rf "${CDS}/application/BOOT-INF/classes"
+for LAYER in dependencies spring-boot-loader snapshot-dependencies application; do
+  cp -r "${CDS}/${LAYER}/." "${CDS}/app/"
+done
+CLASS_PATH="${CDS}/app/lib/keights.jar:${CDS}/app/BOOT-INF/lib/*"
+java -XX:ArchiveClassesAtExit="${CDS}/keights.jsa" -Dspring.context.exit=onRefresh \
+  -cp "${CLASS_PATH}" org.devocative.keights.KeightsApplication > "${CDS}/training.log" 2>&1
+${BENCHMARK} -- java -XX:SharedArchiveFile="${CDS}/keights.jsa" -cp "${CLASS_PATH}" org.devocative.keights.KeightsApplication ${APP_ARGS}
+
+if [ -x "${NATIVE}" ]; then
+  echo "=== native"
+  ${BENCHMARK} -- "${NATIVE}" ${APP_ARGS}
+else
+  echo "=== native: skipped, build it with 'mvn -Pnative -DskipTests native:compile'"
+fi
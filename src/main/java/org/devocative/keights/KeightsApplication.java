@@ -6,6 +6,7 @@ import io.kubernetes.client.util.ClientBuilder;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.io.IOException;
@@ -13,6 +14,7 @@ import java.util.concurrent.TimeUnit;
 
 @EnableScheduling
 @SpringBootApplication
+@ImportRuntimeHints(KeightsRuntimeHints.class)
 public class KeightsApplication {
 
 	@Bean
@@ -0,0 +1,84 @@
+package org.devocative.keights;
+
+import com.google.gson.annotations.JsonAdapter;
+import io.kubernetes.client.custom.V1Patch;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.openapi.models.V1ConfigMapList;
+import io.kubernetes.client.openapi.models.V1EndpointSlice;
+import io.kubernetes.client.openapi.models.V1EndpointSliceList;
+import io.kubernetes.client.openapi.models.V1Lease;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceList;
+import io.kubernetes.client.openapi.models.V1Status;
+import io.kubernetes.client.util.Watch;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reflection hints of the native image for the Kubernetes models read and written by Gson: the root types and, by
+ * walking their fields, every nested model and the type adapters named by @JsonAdapter
+ */
+public class KeightsRuntimeHints implements RuntimeHintsRegistrar {
+	private static final List<Class<?>> ROOTS = List.of(
+		V1ConfigMap.class,
+		V1ConfigMapList.class,
+		V1EndpointSlice.class,
+		V1EndpointSliceList.class,
+		V1Lease.class,
+		V1Patch.class,
+		V1Service.class,
+		V1ServiceList.class,
+		V1Status.class,
+		Watch.Response.class);
+
+	private static final MemberCategory[] MEMBERS = {
+		MemberCategory.DECLARED_FIELDS,
+		MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+		MemberCategory.INVOKE_PUBLIC_METHODS};
+
+	@Override
+	public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+		final var visited = new HashSet<Class<?>>();
+		ROOTS.forEach(type -> register(hints, type, visited));
+
+		hints.resources().registerPattern("okhttp3/internal/publicsuffix/publicsuffixes.gz");
+	}
+
+	// ------------------------------
+
+	private static void register(RuntimeHints hints, Type type, Set<Class<?>> visited) {
+		if (type instanceof ParameterizedType) {
+			for (final var argument : ((ParameterizedType) type).getActualTypeArguments()) {
+				register(hints, argument, visited);
+			}
+			return;
+		}
+
+		if (!(type instanceof Class) || !isModel((Class<?>) type) || !visited.add((Class<?>) type)) {
+			return;
+		}
+
+		final var clazz = (Class<?>) type;
+		hints.reflection().registerType(clazz, MEMBERS);
+
+		final var adapter = clazz.getAnnotation(JsonAdapter.class);
+		if (adapter != null) {
+			hints.reflection().registerType(adapter.value(), MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+		}
+
+		for (final var field : clazz.getDeclaredFields()) {
+			register(hints, field.getGenericType(), visited);
+		}
+	}
+
+	private static boolean isModel(Class<?> clazz) {
+		return clazz.getName().startsWith("io.kubernetes.client.") && !clazz.isPrimitive();
+	}
+}
@@ -3,10 +3,13 @@ package org.devocative.keights.config;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.springframework.beans.BeanUtils;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Getter
 @Setter
@@ -17,15 +20,229 @@ public class CoreDNSProperties {
 	private String configMapKey = "Corefile";
 	private String configMap = "coredns";
 	private String configMapNamespace = "kube-system";
+
+	/**
+	 * The ConfigMaps managed by this instance, e.g. the cluster CoreDNS, NodeLocal DNSCache and a CoreDNS per tenant,
+	 * all fed by the same service informer. If empty, the only target is configMap/configMapNamespace/configMapKey.
+	 */
+	private List<Target> targets = new ArrayList<>();
+
+	/**
+	 * Corefile: 'rewrite name' rules in the Corefile (default). Hosts: a hosts file key served by the CoreDNS hosts
+	 * plugin, the Corefile is changed only once to add the plugin.
+	 */
+	private Backend backend = Backend.Corefile;
 	private Duration rewriteTaskDelay = Duration.ofSeconds(4);
+	private Duration rewriteQuietPeriod = Duration.ofMillis(500);
+	private int writeMaxRetries = 5;
+	private Duration writeRetryBackoff = Duration.ofMillis(200);
+	private Duration writeRetryMaxBackoff = Duration.ofSeconds(5);
+
+	/**
+	 * Interval of comparing the services in the informer cache with the Corefile rewrites, zero disables it
+	 */
+	private Duration reconcileInterval = Duration.ofSeconds(10);
+
+	/**
+	 * Max per-event log lines per second (e.g. queued service requests), the dropped ones are counted in the next line
+	 */
+	private int eventLogRate = 20;
+
+	/**
+	 * If true, the flush only logs the planned rewrite diff (also served by /api/plan), nothing is written
+	 */
+	private boolean dryRun = false;
+
+	/**
+	 * If false, the informers and controllers are created but not started, so nothing reaches the API server, e.g. in
+	 * the AppCDS training run of the image
+	 */
+	private boolean startWatch = true;
+
 	private RewriteConfig rewriteConfig = new RewriteConfig();
+	private ServiceWatch serviceWatch = new ServiceWatch();
+	private LeaderElection leaderElection = new LeaderElection();
+	private Shard shard = new Shard();
+	private Hosts hosts = new Hosts();
+	private Responder responder = new Responder();
+	private Snapshot snapshot = new Snapshot();
+	private Controller controller = new Controller();
+	private Endpoints endpoints = new Endpoints();
+
+	// ------------------------------
+
+	/**
+	 * A copy of these properties with the ConfigMap of the target
+	 */
+	public CoreDNSProperties forTarget(Target target) {
+		final var result = new CoreDNSProperties();
+		BeanUtils.copyProperties(this, result);
+		result.setConfigMap(target.getConfigMap());
+		result.setConfigMapNamespace(target.getConfigMapNamespace());
+		result.setConfigMapKey(target.getConfigMapKey());
+		result.setTargets(List.of());
+		return result;
+	}
 
 	// ------------------------------
 
+	@Getter
+	@Setter
+	@ToString
+	public static class Target {
+		/**
+		 * Defaults to the ConfigMap name, the tag of the metrics and the 'target' parameter of the API
+		 */
+		private String name;
+		private String configMap;
+		private String configMapNamespace = "kube-system";
+		private String configMapKey = "Corefile";
+	}
+
 	@Getter
 	@Setter
 	@ToString
 	public static class RewriteConfig {
 		private String annotation = "keights.coredns.rewrite/domain-name";
 	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class Controller {
+		/**
+		 * Worker threads of the service controller, zero means the number of available processors
+		 */
+		private int workers = 0;
+
+		/**
+		 * Per-key exponential backoff of a failed reconcile or flush, doubled on each failure up to the max
+		 */
+		private Duration retryBaseDelay = Duration.ofMillis(500);
+		private Duration retryMaxDelay = Duration.ofSeconds(60);
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class ServiceWatch {
+		/**
+		 * Only the services matching this label selector are watched, e.g. "keights.coredns/rewrite=true"
+		 */
+		private String labelSelector;
+
+		/**
+		 * If not empty, one informer per namespace is started instead of watching all namespaces
+		 */
+		private List<String> namespaces = new ArrayList<>();
+
+		/**
+		 * Keep only name, namespace, ClusterIP, type, external name and the rewrite annotation of services in the
+		 * informer cache
+		 */
+		private boolean trimCache = false;
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class LeaderElection {
+		/**
+		 * If enabled, all replicas watch but only the holder of the Lease writes the ConfigMap
+		 */
+		private boolean enabled = false;
+		private String leaseName = "keights-coredns";
+		private String leaseNamespace = "keights";
+
+		/**
+		 * Defaults to the HOSTNAME environment variable, i.e. the pod name
+		 */
+		private String identity;
+
+		private Duration leaseDuration = Duration.ofSeconds(15);
+		private Duration renewDeadline = Duration.ofSeconds(10);
+		private Duration retryPeriod = Duration.ofSeconds(2);
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class Shard {
+		/**
+		 * None: the rewrites are in the Corefile key. Otherwise, they are in 'keights-SHARD.rewrites' keys of the same
+		 * ConfigMap, grouped by the namespace of the target or by a hash bucket of the domain, and the Corefile imports
+		 * them. The keys must be mounted next to the Corefile in the CoreDNS pods.
+		 */
+		private ShardMode mode = ShardMode.None;
+		private int buckets = 16;
+
+		/**
+		 * Directory of the mounted ConfigMap in the CoreDNS pods
+		 */
+		private String importPath = "/etc/coredns";
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class Hosts {
+		private String key = "keights.hosts";
+
+		/**
+		 * Directory of the mounted ConfigMap in the CoreDNS pods
+		 */
+		private String path = "/etc/coredns";
+
+		private Duration reload = Duration.ofSeconds(2);
+		private Duration ttl = Duration.ofSeconds(30);
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class Responder {
+		/**
+		 * If enabled, A/AAAA queries of the annotated domains are answered directly with the ClusterIP of the
+		 * service, CoreDNS should forward the zones of those domains to this port
+		 */
+		private boolean enabled = false;
+
+		private String bindAddress = "0.0.0.0";
+		private int port = 5353;
+		private Duration ttl = Duration.ofSeconds(5);
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class Snapshot {
+		/**
+		 * If enabled, the services in the informer caches are saved to the file, and restored at startup so the
+		 * informers resume watching instead of listing all the services
+		 */
+		private boolean enabled = false;
+
+		private String path = "/tmp/keights.snapshot";
+		private Duration interval = Duration.ofSeconds(30);
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class Endpoints {
+		/**
+		 * If enabled, the EndpointSlices of the watched services are watched too: a service with no ready endpoint is
+		 * not rewritten, an ExternalName service is rewritten to its external name, and a headless service is
+		 * answered by the responder with a ready endpoint address
+		 */
+		private boolean enabled = false;
+	}
+
+	public enum Backend {
+		Corefile, Hosts
+	}
+
+	public enum ShardMode {
+		None, Namespace, Hash
+	}
 }
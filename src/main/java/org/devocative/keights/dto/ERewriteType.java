@@ -0,0 +1,28 @@
+package org.devocative.keights.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Match types of the CoreDNS 'rewrite name' rule
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ERewriteType {
+	Exact("exact"),
+	Prefix("prefix"),
+	Suffix("suffix"),
+	Substring("substring"),
+	Regex("regex");
+
+	private final String keyword;
+
+	public static ERewriteType of(String keyword) {
+		for (final var type : values()) {
+			if (type.keyword.equals(keyword)) {
+				return type;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,75 @@
+package org.devocative.keights.dto;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Added, removed and changed rewrites between two sets, with the first few entries as a sample for the logs
+ */
+public class RewriteDiff {
+	@Getter
+	private int added = 0;
+
+	@Getter
+	private int removed = 0;
+
+	@Getter
+	private int changed = 0;
+
+	private final int sampleSize;
+	private final StringBuilder sample = new StringBuilder();
+	private int sampled = 0;
+
+	// ------------------------------
+
+	private RewriteDiff(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	// ------------------------------
+
+	public static RewriteDiff of(Map<String, String> before, Map<String, String> after, int sampleSize) {
+		final var diff = new RewriteDiff(sampleSize);
+		after.forEach((key, target) -> {
+			final var old = before.get(key);
+			if (old == null) {
+				diff.added++;
+				diff.sample('+', key, target);
+			} else if (!old.equals(target)) {
+				diff.changed++;
+				diff.sample('~', key, target);
+			}
+		});
+		before.forEach((key, target) -> {
+			if (!after.containsKey(key)) {
+				diff.removed++;
+				diff.sample('-', key, target);
+			}
+		});
+		return diff;
+	}
+
+	public boolean isEmpty() {
+		return added == 0 && removed == 0 && changed == 0;
+	}
+
+	@Override
+	public String toString() {
+		final var more = added + removed + changed - sampled;
+		return String.format("added=[%s] removed=[%s] changed=[%s] sample=[%s%s]",
+			added, removed, changed, sample, more > 0 ? ", ... " + more + " more" : "");
+	}
+
+	// ------------------------------
+
+	private void sample(char kind, String key, String target) {
+		if (sampled < sampleSize) {
+			if (sampled > 0) {
+				sample.append(", ");
+			}
+			sample.append(kind).append(key).append(" -> ").append(target);
+			sampled++;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package org.devocative.keights.dto;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@RequiredArgsConstructor
+@ToString
+public class RewriteDrift {
+	public static final RewriteDrift NONE = new RewriteDrift(0, 0);
+
+	/**
+	 * Desired rewrites absent from the Corefile or pointing to another FQDN
+	 */
+	private final int missing;
+
+	/**
+	 * Services owning rewrites which are no longer desired
+	 */
+	private final int stale;
+
+	public boolean isEmpty() {
+		return missing == 0 && stale == 0;
+	}
+}
@@ -16,6 +16,7 @@ public class RewriteRequest {
 	private String domainName;
 	private String serviceName;
 	private String serviceNamespace;
+	private long receivedNanos = System.nanoTime();
 
 	public RewriteRequest(String domainName, String serviceName, String serviceNamespace) {
 		this.domainName = domainName;
@@ -23,6 +24,10 @@ public class RewriteRequest {
 		this.serviceNamespace = serviceNamespace;
 	}
 
+	public String getServiceKey() {
+		return serviceNamespace + "/" + serviceName;
+	}
+
 	public String toFQDN(String clusterDomain) {
 		return String.format("%s.%s.svc.%s", serviceName, serviceNamespace, clusterDomain);
 	}
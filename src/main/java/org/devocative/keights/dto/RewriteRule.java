@@ -0,0 +1,117 @@
+package org.devocative.keights.dto;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.devocative.keights.KeightsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * One entry of the rewrite annotation, in one of the forms:
+ * <ul>
+ *     <li>{@code a.site.wsx} or {@code exact:a.site.wsx}: the name is rewritten to the service FQDN</li>
+ *     <li>{@code *.site.wsx}: any sub-domain is rewritten to the service FQDN, same as a regex rule</li>
+ *     <li>{@code prefix:a.}, {@code substring:a.site}: rewritten to the service FQDN</li>
+ *     <li>{@code suffix:.site.wsx}: the suffix is replaced by the namespace domain, i.e. X.site.wsx -> X.NS.svc.CLUSTER</li>
+ *     <li>{@code regex:^api\.site\.wsx\.?$}: rewritten to the service FQDN, with the answer names reverted</li>
+ * </ul>
+ * Entries are comma separated.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class RewriteRule {
+	private static final Pattern ENTRY_PATTERN = Pattern.compile("^(?:(?<TYPE>exact|prefix|suffix|substring|regex):)?(?<PATTERN>[^\\s#\"'{}]+)$");
+
+	private final ERewriteType type;
+	private final String pattern;
+
+	// ------------------------------
+
+	public RewriteRule(ERewriteType type, String pattern) {
+		this.type = type;
+		this.pattern = pattern;
+	}
+
+	// ------------------------------
+
+	public static RewriteRule parse(String entry) {
+		final var matcher = ENTRY_PATTERN.matcher(entry.trim());
+		if (!matcher.matches()) {
+			throw new KeightsException("Invalid Rewrite Rule: [%s]", entry);
+		}
+
+		final var pattern = matcher.group("PATTERN");
+		final var keyword = matcher.group("TYPE");
+		if (keyword == null && pattern.startsWith("*.")) {
+			return new RewriteRule(ERewriteType.Regex, "^.+" + pattern.substring(1).replace(".", "\\.") + "\\.?$");
+		}
+
+		final var type = keyword != null ? ERewriteType.of(keyword) : ERewriteType.Exact;
+		if (type == ERewriteType.Regex) {
+			try {
+				Pattern.compile(pattern);
+			} catch (PatternSyntaxException e) {
+				throw new KeightsException(e, "Invalid Rewrite Regex: [%s]", pattern);
+			}
+		}
+		return new RewriteRule(type, pattern);
+	}
+
+	/**
+	 * Parses the comma separated entries, the invalid ones are passed to the consumer and skipped
+	 */
+	public static List<RewriteRule> parseAll(String value, Consumer<KeightsException> onInvalid) {
+		final var result = new ArrayList<RewriteRule>();
+		for (final var entry : value.split(",")) {
+			if (!entry.isBlank()) {
+				try {
+					result.add(parse(entry));
+				} catch (KeightsException e) {
+					onInvalid.accept(e);
+				}
+			}
+		}
+		return result;
+	}
+
+	// ------------------------------
+
+	/**
+	 * The source part of the rule, the key of the rule in the registry and the Corefile
+	 */
+	public String getKey() {
+		return type == ERewriteType.Exact ? pattern : type.getKeyword() + " " + pattern;
+	}
+
+	/**
+	 * The target rewritten to the host, e.g. the external name of the service, or null for a suffix rule, which
+	 * needs the namespace domain
+	 */
+	public String toTarget(String host) {
+		switch (type) {
+			case Suffix:
+				return null;
+			case Regex:
+				return host + " answer auto";
+			default:
+				return host;
+		}
+	}
+
+	public String toTarget(String serviceName, String serviceNamespace, String clusterDomain) {
+		switch (type) {
+			case Suffix:
+				return String.format(".%s.svc.%s", serviceNamespace, clusterDomain);
+			case Regex:
+				return String.format("%s.%s.svc.%s answer auto", serviceName, serviceNamespace, clusterDomain);
+			default:
+				return String.format("%s.%s.svc.%s", serviceName, serviceNamespace, clusterDomain);
+		}
+	}
+}
@@ -1,19 +1,94 @@
 package org.devocative.keights.iservice;
 
 import org.devocative.keights.dto.EEventType;
+import org.devocative.keights.dto.RewriteDrift;
 import org.devocative.keights.dto.RewriteRequest;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 public interface ICoreDNSService {
 	void handleCoreDNSConfigMap(EEventType event, String coreDNSConfig);
 
-	boolean handleService(EEventType event, String name, String namespace, Map<String, String> annotations);
+	/**
+	 * The data of the CoreDNS ConfigMap, the Corefile key and the rewrite shards, with its resourceVersion
+	 */
+	void handleCoreDNSConfigMap(EEventType event, Map<String, String> data, String resourceVersion);
 
-	Optional<String> processRequests(String coreDNSConfig);
+	default void handleCoreDNSConfigMap(EEventType event, Map<String, String> data) {
+		handleCoreDNSConfigMap(event, data, null);
+	}
+
+	boolean handleService(EEventType event, String name, String namespace, Map<String, String> oldAnnotations, Map<String, String> annotations);
+
+	default boolean handleService(EEventType event, String name, String namespace, Map<String, String> annotations) {
+		return event == EEventType.Deleted ?
+			handleService(event, name, namespace, annotations, null) :
+			handleService(event, name, namespace, null, annotations);
+	}
+
+	Optional<String> processRequests();
+
+	/**
+	 * Replaces the queued requests with the desired ones, listed after the queue is drained, and renders the Corefile.
+	 * Services owning rewrites which are not in the desired list are released.
+	 */
+	Optional<String> reconcileRequests(Supplier<List<RewriteRequest>> desired);
+
+	/**
+	 * Compares the desired requests with the current Corefile, without any change
+	 */
+	RewriteDrift detectDrift(List<RewriteRequest> desired);
+
+	Optional<String> rebaseRequests(String coreDNSConfig);
+
+	Optional<String> rebaseRequests(Map<String, String> data, String resourceVersion);
+
+	default Optional<String> rebaseRequests(Map<String, String> data) {
+		return rebaseRequests(data, null);
+	}
+
+	/**
+	 * All the keys changed by the last render, to be written to the ConfigMap, e.g. the Corefile and the changed shards
+	 */
+	Map<String, String> getPendingData();
+
+	/**
+	 * Called when the pending data is written, with the resourceVersion of the written ConfigMap
+	 */
+	List<RewriteRequest> commitRequests(String resourceVersion);
+
+	default List<RewriteRequest> commitRequests() {
+		return commitRequests(null);
+	}
+
+	/**
+	 * The resourceVersion of the ConfigMap the rewrites were read from or written to, the precondition of the next
+	 * write, so a ConfigMap changed since then is rebased and never overwritten
+	 */
+	String getResourceVersion();
+
+	void rollbackRequests();
+
+	/**
+	 * The rewrites in the ConfigMap, as of the last read or write
+	 */
+	Map<String, String> getRewrites();
+
+	List<RewriteRequest> getPendingRequests();
+
+	/**
+	 * The rewrites after the next flush, the pending requests applied to a copy of the registry
+	 */
+	Map<String, String> planRequests();
 
 	boolean hasRewrite(RewriteRequest request);
 
 	int getRewritesSize();
+
+	int getRequestsSize();
+
+	boolean isInited();
 }
@@ -0,0 +1,483 @@
+package org.devocative.keights.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.KeightsException;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.dto.EEventType;
+import org.devocative.keights.dto.RewriteDiff;
+import org.devocative.keights.dto.RewriteDrift;
+import org.devocative.keights.dto.RewriteRequest;
+import org.devocative.keights.dto.RewriteRule;
+import org.devocative.keights.iservice.ICoreDNSService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.devocative.keights.dto.EEventType.Deleted;
+import static org.devocative.keights.dto.EEventType.Updated;
+
+/**
+ * The request protocol shared by the backends: requests are queued, applied to the registry in a flush, rendered
+ * into the changed ConfigMap keys, and committed, rebased or rolled back depending on the write. The backend only
+ * parses its keys into rewrites, renders them back, and maps a rule of a service to its target.
+ */
+@Slf4j
+public abstract class AbstractCoreDNSService implements ICoreDNSService {
+	/**
+	 * Full dumps of the Corefile and the rewrites, enabled by 'logging.level.keights.config=debug'
+	 */
+	protected static final Logger CONFIG_LOG = LoggerFactory.getLogger("keights.config");
+
+	private static final int DIFF_SAMPLE_SIZE = 10;
+
+	protected final CoreDNSProperties properties;
+
+	private final AtomicBoolean coreDNSConfigProcessed = new AtomicBoolean(false);
+	protected final RewriteRegistry REWRITES = new RewriteRegistry();
+	private final PendingRequests REQUESTS = new PendingRequests();
+	private final List<RewriteRequest> IN_FLIGHT = new ArrayList<>();
+
+	// The parsed rules of each annotation value, dropped when a service changes or drops the value
+	private final Map<String, List<RewriteRule>> RULES = new ConcurrentHashMap<>();
+
+	// Service key -> rules with no target, warned once until the annotation of the service changes
+	private final Map<String, Set<String>> SKIPPED = new ConcurrentHashMap<>();
+
+	// The rewrites in the ConfigMap, and the digests of the keys managed by the backend
+	private volatile Map<String, String> rewrites = Map.of();
+	private long rewritesHash = 0;
+	private Map<String, String> digests = Map.of();
+	private String resourceVersion;
+
+	// Copy of the registry as last written or read, never changed, the base of planRequests()
+	private volatile RewriteRegistry committed = new RewriteRegistry();
+
+	private Map<String, String> pendingRewrites;
+	private Map<String, String> pendingDigests;
+	private Map<String, String> pendingData = Map.of();
+
+	// ------------------------------
+
+	protected AbstractCoreDNSService(CoreDNSProperties properties) {
+		this.properties = properties;
+	}
+
+	// ------------------------------
+
+	@Override
+	public void handleCoreDNSConfigMap(EEventType event, String coreDNSConfig) {
+		handleCoreDNSConfigMap(event, Map.of(properties.getConfigMapKey(), coreDNSConfig));
+	}
+
+	@Override
+	public synchronized void handleCoreDNSConfigMap(EEventType event, Map<String, String> data, String resourceVersion) {
+		final var digests = digests(data);
+
+		if (coreDNSConfigProcessed.get()) {
+			if (digests.equals(this.digests)) {
+				log.info("Handle CoreDNS: event=[{}], Corefile unchanged", event);
+				this.resourceVersion = resourceVersion;
+				return;
+			}
+
+			if (digests.equals(pendingDigests)) {
+				log.info("Handle CoreDNS: event=[{}], Corefile is the pending write", event);
+				commitPending();
+				this.resourceVersion = resourceVersion;
+				return;
+			}
+		}
+
+		parse(event, data, digests);
+		this.resourceVersion = resourceVersion;
+	}
+
+	@Override
+	public boolean handleService(EEventType event, String name, String namespace, Map<String, String> oldAnnotations, Map<String, String> annotations) {
+		log.trace("Handle Service: event=[{}] name=[{}]", event, name);
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+		final var oldDomain = oldAnnotations != null ? oldAnnotations.get(annotationKey) : null;
+		final var newDomain = annotations != null ? annotations.get(annotationKey) : null;
+
+		final RewriteRequest request;
+		if (newDomain != null && !newDomain.equals(oldDomain)) {
+			request = new RewriteRequest()
+				.setEvent(event)
+				.setDomainName(newDomain);
+		} else if (newDomain == null && oldDomain != null) {
+			request = new RewriteRequest()
+				.setEvent(Deleted)
+				.setDomainName(oldDomain);
+		} else {
+			return false;
+		}
+
+		if (oldDomain != null) {
+			RULES.remove(oldDomain);
+		}
+		SKIPPED.remove(namespace + "/" + name);
+
+		request
+			.setServiceName(name)
+			.setServiceNamespace(namespace);
+		REQUESTS.put(request);
+		return true;
+	}
+
+	@Override
+	public synchronized Optional<String> processRequests() {
+		log.debug("Start Processing Rewrite Requests");
+
+		if (!coreDNSConfigProcessed.get()) {
+			log.warn("CoreDNS Not Inited!");
+			return Optional.empty();
+		}
+
+		if (REQUESTS.isEmpty()) {
+			return Optional.empty();
+		}
+
+		final var local = REQUESTS.drain();
+		log.info("Rewrite Requests Size = [{}]", local.size());
+
+		IN_FLIGHT.addAll(local);
+		applyRequests(REWRITES, local);
+
+		return render();
+	}
+
+	@Override
+	public synchronized Optional<String> reconcileRequests(Supplier<List<RewriteRequest>> desired) {
+		if (!coreDNSConfigProcessed.get()) {
+			log.warn("CoreDNS Not Inited!");
+			return Optional.empty();
+		}
+
+		log.info("Reconcile: Drop Queued Requests Size = [{}]", REQUESTS.drain().size());
+
+		final var local = new ArrayList<>(desired.get());
+		log.info("Reconcile: Desired Requests Size = [{}]", local.size());
+
+		final var desiredOwners = new HashSet<String>();
+		local.forEach(request -> desiredOwners.add(request.getServiceKey()));
+		for (final var owner : REWRITES.getOwners()) {
+			if (!desiredOwners.contains(owner)) {
+				final var nsName = owner.split("/", 2);
+				log.info("Reconcile: Release Stale Owner=[{}]", owner);
+				local.add(new RewriteRequest(null, nsName[1], nsName[0]).setEvent(Deleted));
+			}
+		}
+
+		IN_FLIGHT.addAll(local);
+		applyRequests(REWRITES, local);
+
+		return render();
+	}
+
+	@Override
+	public synchronized RewriteDrift detectDrift(List<RewriteRequest> desired) {
+		if (!coreDNSConfigProcessed.get()) {
+			return RewriteDrift.NONE;
+		}
+
+		final var desiredOwners = new HashSet<String>();
+		final var desiredTargets = new HashMap<String, Set<String>>();
+		for (final var request : desired) {
+			desiredOwners.add(request.getServiceKey());
+			toRewrites(request).forEach((domain, target) -> desiredTargets
+				.computeIfAbsent(domain, k -> new HashSet<>())
+				.add(target));
+		}
+
+		// A domain claimed by more than one service is fine if it points to any of them
+		final var current = rewrites;
+		int missing = 0;
+		for (final var entry : desiredTargets.entrySet()) {
+			if (!entry.getValue().contains(current.get(entry.getKey()))) {
+				missing++;
+			}
+		}
+
+		int stale = 0;
+		for (final var owner : REWRITES.getOwners()) {
+			if (!desiredOwners.contains(owner)) {
+				stale++;
+			}
+		}
+
+		return missing == 0 && stale == 0 ? RewriteDrift.NONE : new RewriteDrift(missing, stale);
+	}
+
+	@Override
+	public Optional<String> rebaseRequests(String coreDNSConfig) {
+		return rebaseRequests(Map.of(properties.getConfigMapKey(), coreDNSConfig));
+	}
+
+	@Override
+	public synchronized Optional<String> rebaseRequests(Map<String, String> data, String resourceVersion) {
+		log.info("Rebase In-Flight Requests: size=[{}] resourceVersion=[{}]", IN_FLIGHT.size(), resourceVersion);
+
+		parse(Updated, data, digests(data));
+		this.resourceVersion = resourceVersion;
+
+		return render();
+	}
+
+	@Override
+	public synchronized List<RewriteRequest> commitRequests(String resourceVersion) {
+		commitPending();
+		this.resourceVersion = resourceVersion;
+		final var committed = new ArrayList<>(IN_FLIGHT);
+		IN_FLIGHT.clear();
+		return committed;
+	}
+
+	@Override
+	public synchronized void rollbackRequests() {
+		if (!IN_FLIGHT.isEmpty()) {
+			log.warn("Rollback In-Flight Requests: size=[{}]", IN_FLIGHT.size());
+			REQUESTS.restore(IN_FLIGHT);
+			IN_FLIGHT.clear();
+			REWRITES.reset(rewrites);
+		}
+		clearPending();
+	}
+
+	@Override
+	public synchronized String getResourceVersion() {
+		return resourceVersion;
+	}
+
+	@Override
+	public synchronized Map<String, String> getPendingData() {
+		return pendingData;
+	}
+
+	@Override
+	public Map<String, String> getRewrites() {
+		return rewrites;
+	}
+
+	@Override
+	public List<RewriteRequest> getPendingRequests() {
+		return REQUESTS.peek();
+	}
+
+	/**
+	 * The committed rewrites with the in-flight and pending requests applied, computed on a copy of the committed
+	 * registry outside the lock, so a poll does not hold up the flushes
+	 */
+	@Override
+	public Map<String, String> planRequests() {
+		final RewriteRegistry base;
+		final List<RewriteRequest> requests;
+		synchronized (this) {
+			if (!coreDNSConfigProcessed.get() || (IN_FLIGHT.isEmpty() && REQUESTS.size() == 0)) {
+				return rewrites;
+			}
+
+			base = committed;
+			requests = new ArrayList<>(IN_FLIGHT);
+			requests.addAll(REQUESTS.peek());
+		}
+
+		final var registry = base.copy();
+		applyRequests(registry, requests);
+		return registry.snapshot();
+	}
+
+	@Override
+	public boolean hasRewrite(RewriteRequest request) {
+		if (!coreDNSConfigProcessed.get()) {
+			return false;
+		}
+
+		final var rewrites = toRewrites(request);
+		if (rewrites.isEmpty()) {
+			return false;
+		}
+		for (final var entry : rewrites.entrySet()) {
+			if (!REWRITES.contains(entry.getKey(), entry.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int getRewritesSize() {
+		return REWRITES.size();
+	}
+
+	@Override
+	public int getRequestsSize() {
+		return REQUESTS.size();
+	}
+
+	@Override
+	public boolean isInited() {
+		return coreDNSConfigProcessed.get();
+	}
+
+	// ------------------------------
+
+	/**
+	 * Parses the managed keys of the ConfigMap data into the current rewrites, keeping the backend state for rendering
+	 */
+	protected abstract Map<String, String> parseData(EEventType event, Map<String, String> data);
+
+	/**
+	 * Renders the changed keys, always with the main key, or empty if nothing is changed
+	 */
+	protected abstract Optional<Map<String, String>> renderData();
+
+	/**
+	 * Called when the last rendered data is written
+	 */
+	protected abstract void commitData();
+
+	/**
+	 * The key returned by processRequests(), e.g. the Corefile
+	 */
+	protected abstract String getMainKey();
+
+	protected abstract boolean isManagedKey(String key);
+
+	/**
+	 * The target identifying the service, rewrites of no owner with this target are replaced by the service's ones
+	 */
+	protected abstract String getServiceTarget(RewriteRequest request);
+
+	/**
+	 * The target of the rule for the service, or null if the backend can not serve it
+	 */
+	protected abstract String getRuleTarget(RewriteRule rule, RewriteRequest request);
+
+	/**
+	 * True if the registry has the rewrites of the ConfigMap, the hash is only compared first as a fast check
+	 */
+	protected boolean isRewritesUnchanged() {
+		return REWRITES.getHash() == rewritesHash && REWRITES.contentEquals(rewrites);
+	}
+
+	protected Map<String, String> getDigests() {
+		return digests;
+	}
+
+	// ------------------------------
+
+	private void parse(EEventType event, Map<String, String> data, Map<String, String> digests) {
+		coreDNSConfigProcessed.set(false);
+
+		final var parsed = parseData(event, data);
+		log.info("Handle CoreDNS: event=[{}] rewrites=[{}]", event, parsed.size());
+		CONFIG_LOG.debug("Handle CoreDNS: Rewrites={}", parsed);
+
+		REWRITES.reset(parsed);
+		rewrites = Collections.unmodifiableMap(parsed);
+		rewritesHash = RewriteRegistry.hash(parsed);
+		this.digests = digests;
+		clearPending();
+		committed = REWRITES.copy();
+		coreDNSConfigProcessed.set(true);
+
+		if (!IN_FLIGHT.isEmpty()) {
+			log.info("Handle CoreDNS: Reapply In-Flight Requests Size = [{}]", IN_FLIGHT.size());
+			applyRequests(REWRITES, IN_FLIGHT);
+		}
+	}
+
+	private Optional<String> render() {
+		final var result = renderData();
+		if (result.isEmpty()) {
+			// Nothing to write, but the claims of the requests are kept
+			if (!IN_FLIGHT.isEmpty()) {
+				committed = REWRITES.copy();
+				IN_FLIGHT.clear();
+			}
+			return Optional.empty();
+		}
+
+		final var data = result.get();
+		pendingRewrites = REWRITES.snapshot();
+		if (log.isInfoEnabled()) {
+			log.info("Render: keys={} {}", data.keySet(), RewriteDiff.of(rewrites, pendingRewrites, DIFF_SAMPLE_SIZE));
+		}
+		pendingData = data;
+		pendingDigests = new HashMap<>(digests);
+		data.forEach((key, value) -> pendingDigests.put(key, Corefile.digest(value)));
+		return Optional.of(data.get(getMainKey()));
+	}
+
+	private void commitPending() {
+		if (pendingRewrites != null) {
+			commitData();
+			rewrites = Collections.unmodifiableMap(pendingRewrites);
+			rewritesHash = RewriteRegistry.hash(pendingRewrites);
+			digests = pendingDigests;
+			committed = REWRITES.copy();
+		}
+		clearPending();
+	}
+
+	private void clearPending() {
+		pendingRewrites = null;
+		pendingDigests = null;
+		pendingData = Map.of();
+	}
+
+	private Map<String, String> digests(Map<String, String> data) {
+		final var result = new HashMap<String, String>();
+		data.forEach((key, value) -> {
+			if (value != null && isManagedKey(key)) {
+				result.put(key, Corefile.digest(value));
+			}
+		});
+		return result;
+	}
+
+	private void applyRequests(RewriteRegistry registry, List<RewriteRequest> requests) {
+		for (final var request : requests) {
+			switch (request.getEvent()) {
+				case Added:
+				case Updated:
+					registry.assign(request.getServiceKey(), getServiceTarget(request), toRewrites(request));
+					break;
+
+				case Deleted:
+					registry.unassign(request.getServiceKey(), getServiceTarget(request));
+					break;
+				default:
+					throw new KeightsException("Unsupported Event: %s", request.getEvent());
+			}
+		}
+	}
+
+	/**
+	 * Rule key -> target of the rules in the domain annotation, the invalid ones are skipped
+	 */
+	private Map<String, String> toRewrites(RewriteRequest request) {
+		final var result = new LinkedHashMap<String, String>();
+		if (request.getDomainName() != null) {
+			final var rules = RULES.computeIfAbsent(request.getDomainName(), domainName -> List.copyOf(
+				RewriteRule.parseAll(domainName,
+					e -> log.warn("Skip Rewrite Rule: service=[{}] {}", request.getServiceKey(), e.getMessage()))));
+			for (final var rule : rules) {
+				final var target = getRuleTarget(rule, request);
+				if (target != null) {
+					result.put(rule.getKey(), target);
+				} else if (SKIPPED.computeIfAbsent(request.getServiceKey(), k -> ConcurrentHashMap.newKeySet()).add(rule.getKey())) {
+					log.warn("Skip Rewrite Rule: service=[{}] rule=[{}], no target", request.getServiceKey(), rule.getKey());
+				} else {
+					log.debug("Skip Rewrite Rule: service=[{}] rule=[{}], no target", request.getServiceKey(), rule.getKey());
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,64 @@
+package org.devocative.keights.service;
+
+import io.kubernetes.client.extended.controller.reconciler.Reconciler;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.extended.controller.reconciler.Result;
+import io.kubernetes.client.informer.cache.Indexer;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import static org.devocative.keights.dto.EEventType.Added;
+import static org.devocative.keights.dto.EEventType.Updated;
+
+/**
+ * Reconciles the ConfigMap of a target from the informer cache into its CoreDNS service, skipping the version written
+ * by Keights itself. The latest ConfigMap only names the target of the next write, its precondition is the
+ * resourceVersion of the ConfigMap parsed by the CoreDNS service.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ConfigMapReconciler implements Reconciler {
+	private final CoreDNSTarget target;
+	private final KeightsMetrics metrics;
+	private final Indexer<V1ConfigMap> indexer;
+	private final Runnable onInited;
+
+	private volatile V1ConfigMap configMap;
+	private volatile String writtenResourceVersion;
+
+	// ------------------------------
+
+	@Override
+	public Result reconcile(Request request) {
+		final var obj = indexer.getByKey(request.getNamespace() + "/" + request.getName());
+		if (obj == null) {
+			log.error("CoreDNS ConfigMap REMOVED!!! target=[{}]", target.getName());
+			return new Result(false);
+		}
+
+		configMap = obj;
+		if (obj.getMetadata().getResourceVersion().equals(writtenResourceVersion)) {
+			log.debug("CoreDNS ConfigMap Updated By Keights: target=[{}] resourceVersion=[{}]", target.getName(), writtenResourceVersion);
+			return new Result(false);
+		}
+
+		final var coreDNSService = target.getCoreDNSService();
+		final var inited = coreDNSService.isInited();
+		metrics.corefile(target.getName(), obj.getData().get(target.getProperties().getConfigMapKey()));
+		coreDNSService.handleCoreDNSConfigMap(inited ? Updated : Added, obj.getData(), obj.getMetadata().getResourceVersion());
+		if (!inited) {
+			onInited.run();
+		}
+		return new Result(false);
+	}
+
+	public V1ConfigMap getConfigMap() {
+		return configMap;
+	}
+
+	public void written(V1ConfigMap written) {
+		writtenResourceVersion = written.getMetadata().getResourceVersion();
+		configMap = written;
+	}
+}
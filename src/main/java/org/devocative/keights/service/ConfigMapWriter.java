@@ -0,0 +1,125 @@
+package org.devocative.keights.service;
+
+import io.kubernetes.client.custom.V1Patch;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.util.PatchUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.KeightsException;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.springframework.stereotype.Service;
+
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Writes the Corefile key, and the changed rewrite shards, with a strategic merge patch guarded by the resourceVersion
+ * of the ConfigMap the data is rendered from.
+ * On conflict, the ConfigMap is re-read, the pending requests are rebased on it and the patch is retried with backoff.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class ConfigMapWriter {
+	private final CoreV1Api coreV1Api;
+	private final CoreDNSProperties properties;
+	private final KeightsMetrics metrics;
+
+	// ------------------------------
+
+	/**
+	 * @param current         the last seen ConfigMap, only its name and namespace are used
+	 * @param resourceVersion the version the data is rendered from, the precondition of the first attempt
+	 * @param data            the keys to write, other keys of the ConfigMap are kept
+	 * @param rebase          called with the fresh ConfigMap after a conflict, returns the new keys or empty if nothing
+	 *                        is left to write
+	 * @return the written ConfigMap, or the fresh one if the rebase left nothing to write
+	 */
+	public V1ConfigMap write(V1ConfigMap current, String resourceVersion, Map<String, String> data,
+							 Function<V1ConfigMap, Optional<Map<String, String>>> rebase) {
+		return metrics.getWriteTimer().record(() -> doWrite(current, resourceVersion, data, rebase));
+	}
+
+	// ------------------------------
+
+	private V1ConfigMap doWrite(V1ConfigMap current, String resourceVersion, Map<String, String> data,
+								Function<V1ConfigMap, Optional<Map<String, String>>> rebase) {
+		final var configMap = current.getMetadata().getNamespace() + "/" + current.getMetadata().getName();
+		var backoff = properties.getWriteRetryBackoff();
+
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return patch(current, data, resourceVersion);
+			} catch (ApiException e) {
+				if (e.getCode() != HttpURLConnection.HTTP_CONFLICT || attempt >= properties.getWriteMaxRetries()) {
+					log.error("ConfigMapWriter: configMap=[{}] code=[{}] attempt=[{}] body=[{}]", configMap, e.getCode(), attempt, e.getResponseBody());
+					metrics.writeFailure();
+					throw new KeightsException(e, "CoreDNS ConfigMap Write Failed: configMap=[%s] code=[%s]", configMap, e.getCode());
+				}
+
+				metrics.writeConflict();
+				log.warn("ConfigMapWriter: Conflict, configMap=[{}] attempt=[{}] resourceVersion=[{}], retry in {}", configMap, attempt, resourceVersion, backoff);
+				sleep(backoff.toMillis());
+				backoff = backoff.multipliedBy(2);
+				if (backoff.compareTo(properties.getWriteRetryMaxBackoff()) > 0) {
+					backoff = properties.getWriteRetryMaxBackoff();
+				}
+
+				final var fresh = read(current);
+				final var rebased = rebase.apply(fresh);
+				if (rebased.isEmpty()) {
+					log.info("ConfigMapWriter: Nothing To Write After Rebase, configMap=[{}]", configMap);
+					return fresh;
+				}
+				data = rebased.get();
+				resourceVersion = fresh.getMetadata().getResourceVersion();
+			}
+		}
+	}
+
+	private V1ConfigMap patch(V1ConfigMap current, Map<String, String> data, String resourceVersion) throws ApiException {
+		final var apiClient = coreV1Api.getApiClient();
+		final var body = Map.of(
+			"metadata", Map.of("resourceVersion", resourceVersion),
+			"data", data);
+
+		return PatchUtils.patch(
+			V1ConfigMap.class,
+			() -> coreV1Api.patchNamespacedConfigMapCall(
+				current.getMetadata().getName(),
+				current.getMetadata().getNamespace(),
+				new V1Patch(apiClient.getJSON().serialize(body)),
+				null,
+				null,
+				null,
+				null,
+				null,
+				null),
+			V1Patch.PATCH_FORMAT_STRATEGIC_MERGE_PATCH,
+			apiClient);
+	}
+
+	private V1ConfigMap read(V1ConfigMap current) {
+		try {
+			return coreV1Api.readNamespacedConfigMap(
+				current.getMetadata().getName(),
+				current.getMetadata().getNamespace(),
+				null);
+		} catch (ApiException e) {
+			throw new KeightsException(e, "CoreDNS ConfigMap Read Failed: code=[%s]", e.getCode());
+		}
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KeightsException(e);
+		}
+	}
+}
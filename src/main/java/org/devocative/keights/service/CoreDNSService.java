@@ -1,167 +1,158 @@
 package org.devocative.keights.service;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.devocative.keights.KeightsException;
 import org.devocative.keights.config.CoreDNSProperties;
 import org.devocative.keights.dto.EEventType;
 import org.devocative.keights.dto.RewriteRequest;
-import org.devocative.keights.iservice.ICoreDNSService;
-import org.springframework.stereotype.Service;
+import org.devocative.keights.dto.RewriteRule;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+/**
+ * The default backend: 'rewrite name' rules in the Corefile, or in shard keys imported by the Corefile. In the
+ * endpoints mode, the rules of an ExternalName service are rewritten to its external name, so the client does not
+ * follow the CNAME of the service FQDN.
+ */
 @Slf4j
-@RequiredArgsConstructor
-@Service
-public class CoreDNSService implements ICoreDNSService {
-	private final CoreDNSProperties properties;
+public class CoreDNSService extends AbstractCoreDNSService {
+	private final RewriteShards shards;
+	private final ServiceCache serviceCache;
 
-	private final AtomicBoolean coreDNSConfigProcessed = new AtomicBoolean(false);
-	private final Map<String, String> REWRITES = new ConcurrentHashMap<>();
-	private final List<RewriteRequest> REQUESTS = Collections.synchronizedList(new ArrayList<>());
+	private volatile Corefile corefile;
+	private Map<String, Map<String, String>> shardRewrites = Map.of();
+	private boolean layoutClean = false;
 
-	private final Pattern clusterDomainNamePattern = Pattern.compile("kubernetes +([\\w.]+) ");
-	private final Pattern rewritePattern = Pattern.compile("rewrite\\s+name\\s+(exact)?\\s*(?<SRC>(?![-.])[\\w-.]*\\w)\\s+(?<DST>(?![-.])[\\w-.]*\\w)");
-
-	private String clusterDomainName;
+	private Map<String, Map<String, String>> pendingShardRewrites;
 
 	// ------------------------------
 
-	@Override
-	public void handleCoreDNSConfigMap(EEventType event, String coreDNSConfig) {
-		coreDNSConfigProcessed.set(false);
-		log.info("Handle CoreDNS: event=[{}]\n{}", event, coreDNSConfig);
-
-		final var matcher = clusterDomainNamePattern.matcher(coreDNSConfig);
-		if (matcher.find()) {
-			clusterDomainName = matcher.group(1);
-			log.info("Cluster DomainName = [{}]", clusterDomainName);
-		}
-
-		final var rewrites = extractRewrites(coreDNSConfig);
-		log.info("Handle CoreDNS: Rewrites={}", rewrites);
+	public CoreDNSService(CoreDNSProperties properties) {
+		this(properties, new ServiceCache());
+	}
 
-		REWRITES.clear();
-		REWRITES.putAll(rewrites);
-		coreDNSConfigProcessed.set(true);
+	public CoreDNSService(CoreDNSProperties properties, ServiceCache serviceCache) {
+		super(properties);
+		this.shards = new RewriteShards(properties.getShard());
+		this.serviceCache = serviceCache;
 	}
 
+	// ------------------------------
+
 	@Override
-	public boolean handleService(EEventType event, String name, String namespace, Map<String, String> annotations) {
-		log.info("Handle Service: event=[{}] name=[{}]", event, name);
-
-		boolean rqAdded = false;
-		final var annotationKey = properties.getRewriteConfig().getAnnotation();
-		if (annotations != null && annotations.containsKey(annotationKey)) {
-			final var request = new RewriteRequest()
-				.setEvent(event)
-				.setDomainName(annotations.get(annotationKey))
-				.setServiceName(name)
-				.setServiceNamespace(namespace);
-			log.info("Handle Service: Add Rq={}", request);
-			REQUESTS.add(request);
-			rqAdded = true;
+	protected Map<String, String> parseData(EEventType event, Map<String, String> data) {
+		final var coreDNSConfig = data.get(properties.getConfigMapKey());
+		if (coreDNSConfig == null) {
+			throw new KeightsException("CoreDNS ConfigMap Key Not Found: key=[%s]", properties.getConfigMapKey());
 		}
 
-		return rqAdded;
+		log.info("Handle CoreDNS: event=[{}] length=[{}]", event, coreDNSConfig.length());
+		CONFIG_LOG.debug("Handle CoreDNS: Corefile\n{}", coreDNSConfig);
+
+		final var parsed = Corefile.parse(coreDNSConfig);
+		log.info("Cluster DomainName = [{}], Server Blocks = {}", parsed.getClusterDomainName(), parsed.getServerBlockKeys());
+
+		final var rewrites = new LinkedHashMap<>(parsed.getRewrites());
+		final var shardData = new HashMap<String, Map<String, String>>();
+		new TreeMap<>(data).forEach((key, value) -> {
+			if (RewriteShards.isShardKey(key) && value != null) {
+				final var shardRewrites = Corefile.parse(value).getRewrites();
+				if (!shardRewrites.isEmpty()) {
+					log.debug("Handle CoreDNS: shard=[{}] rewrites=[{}]", key, shardRewrites.size());
+					rewrites.putAll(shardRewrites);
+					shardData.put(key, shardRewrites);
+				}
+			}
+		});
+
+		corefile = parsed;
+		shardRewrites = shardData;
+		if (shards.isEnabled()) {
+			final var expected = parsed.render(!rewrites.isEmpty() ? shards.importLine(RewriteRegistry.hash(rewrites)) : null);
+			layoutClean = expected.equals(coreDNSConfig);
+		} else {
+			layoutClean = shardData.isEmpty();
+		}
+		pendingShardRewrites = null;
+		return rewrites;
 	}
 
+	/**
+	 * Renders the Corefile, unless the rewrite set or the rendered text is the same as the current Corefile. In shard
+	 * mode, only the shards whose rewrites changed are rendered.
+	 */
 	@Override
-	public Optional<String> processRequests(String coreDNSConfig) {
-		log.info("Start Processing Rewrite Requests");
-
-		if (!coreDNSConfigProcessed.get()) {
-			log.warn("CoreDNS Not Inited!");
+	protected Optional<Map<String, String>> renderData() {
+		if (layoutClean && isRewritesUnchanged()) {
+			log.info("CoreDNS Rewrites Unchanged, Nothing To Write");
 			return Optional.empty();
 		}
 
-		if (REQUESTS.isEmpty()) {
-			return Optional.empty();
+		final var newConfig = shards.isEnabled() ?
+			corefile.render(REWRITES.size() > 0 ? shards.importLine(REWRITES.getHash()) : null) :
+			corefile.render(REWRITES);
+
+		final var data = new TreeMap<String, String>();
+		final var newShardRewrites = new HashMap<String, Map<String, String>>();
+		if (shards.isEnabled()) {
+			shards.group(REWRITES).forEach((key, rewrites) -> {
+				newShardRewrites.put(key, rewrites);
+				if (!rewrites.equals(shardRewrites.get(key))) {
+					data.put(key, Corefile.renderRewrites(rewrites));
+				}
+			});
 		}
-
-		log.info("Rewrite Requests Size = [{}]", REQUESTS.size());
-
-		final var local = new ArrayList<RewriteRequest>();
-		synchronized (REQUESTS) {
-			local.addAll(REQUESTS);
-			REQUESTS.clear();
-		}
-
-		var modified = false;
-		for (final var request : local) {
-			final var serviceFqdn = request.toFQDN(clusterDomainName);
-
-			switch (request.getEvent()) {
-				case Added:
-				case Updated:
-					if (!hasRewrite(request)) {
-						modified = true;
-
-						REWRITES
-							.entrySet()
-							.stream()
-							.filter(entry -> entry.getValue().equals(serviceFqdn))
-							.map(Map.Entry::getKey)
-							.findFirst()
-							.ifPresent(REWRITES::remove);
-
-						REWRITES.put(request.getDomainName(), serviceFqdn);
-					}
-					break;
-
-				case Deleted:
-					//TODO
-					break;
-				default:
-					throw new KeightsException("Unsupported Event: %s", request.getEvent());
+		for (final var key : shardRewrites.keySet()) {
+			if (!newShardRewrites.containsKey(key)) {
+				data.put(key, "");
 			}
 		}
 
-		if (modified) {
-			final var newConfigLines = Stream.of(coreDNSConfig.split("\\n"))
-				.filter(s -> !rewritePattern.matcher(s).find())
-				.collect(Collectors.toList());
-
-			REWRITES.forEach((key, value) -> newConfigLines.add(1,
-				String.format("    rewrite name %s %s", key, value)));
-
-			final var newConfig = String.join("\n", newConfigLines);
-			log.info("CoreDNS New Config:\n{}", newConfig);
-
-			return Optional.of(newConfig);
+		if (data.isEmpty() && Corefile.digest(newConfig).equals(getDigests().get(properties.getConfigMapKey()))) {
+			log.info("CoreDNS Config Unchanged, Nothing To Write");
+			return Optional.empty();
 		}
 
-		return Optional.empty();
+		log.info("CoreDNS New Config: length=[{}] changed shards={}", newConfig.length(), data.keySet());
+		CONFIG_LOG.debug("CoreDNS New Config:\n{}", newConfig);
+		data.put(properties.getConfigMapKey(), newConfig);
+		pendingShardRewrites = newShardRewrites;
+		return Optional.of(data);
 	}
 
 	@Override
-	public boolean hasRewrite(RewriteRequest request) {
-		final var rqSvcFqdn = request.toFQDN(clusterDomainName);
-
-		final var svcFQDN = REWRITES.get(request.getDomainName());
+	protected void commitData() {
+		if (pendingShardRewrites != null) {
+			shardRewrites = pendingShardRewrites;
+			pendingShardRewrites = null;
+		}
+		layoutClean = true;
+	}
 
-		return svcFQDN != null && svcFQDN.equals(rqSvcFqdn);
+	@Override
+	protected String getMainKey() {
+		return properties.getConfigMapKey();
 	}
 
 	@Override
-	public int getRewritesSize() {
-		return REWRITES.size();
+	protected boolean isManagedKey(String key) {
+		return key.equals(properties.getConfigMapKey()) || RewriteShards.isShardKey(key);
 	}
 
-	// ------------------------------
+	@Override
+	protected String getServiceTarget(RewriteRequest request) {
+		return request.toFQDN(corefile.getClusterDomainName());
+	}
 
-	private Map<String, String> extractRewrites(String coreDnsConfig) {
-		return Stream.of(coreDnsConfig.split("\\n"))
-			.map(rewritePattern::matcher)
-			.filter(Matcher::find)
-			.map(m -> new String[]{m.group(2), m.group(3)})
-			.collect(Collectors.toMap(arr -> arr[0], arr -> arr[1]));
+	@Override
+	protected String getRuleTarget(RewriteRule rule, RewriteRequest request) {
+		if (properties.getEndpoints().isEnabled()) {
+			final var externalName = ServiceEndpoints.getExternalName(serviceCache.get(request.getServiceNamespace(), request.getServiceName()));
+			final var target = externalName != null ? rule.toTarget(externalName) : null;
+			if (target != null) {
+				return target;
+			}
+		}
+		return rule.toTarget(request.getServiceName(), request.getServiceNamespace(), corefile.getClusterDomainName());
 	}
 }
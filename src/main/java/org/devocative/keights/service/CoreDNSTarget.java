@@ -0,0 +1,31 @@
+package org.devocative.keights.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.iservice.ICoreDNSService;
+
+/**
+ * One managed ConfigMap, with its own CoreDNS service: the parsed Corefile, the cluster domain and the rewrites
+ */
+@Getter
+@RequiredArgsConstructor
+public class CoreDNSTarget {
+	private final String name;
+	private final CoreDNSProperties properties;
+	private final ICoreDNSService coreDNSService;
+
+	// ------------------------------
+
+	/**
+	 * namespace/name of the ConfigMap, as in the informer cache
+	 */
+	public String getConfigMapKey() {
+		return properties.getConfigMapNamespace() + "/" + properties.getConfigMap();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s(%s:%s)", name, getConfigMapKey(), properties.getConfigMapKey());
+	}
+}
@@ -0,0 +1,108 @@
+package org.devocative.keights.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.KeightsException;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.iservice.ICoreDNSService;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The target ConfigMaps of keights.coredns.targets, or the single one of the top-level properties. Each target has
+ * a CoreDNS service of the configured backend, the requests of a service event are sent to all of them.
+ */
+@Slf4j
+@Service
+public class CoreDNSTargets {
+	private final List<CoreDNSTarget> targets;
+
+	// ------------------------------
+
+	public CoreDNSTargets(CoreDNSProperties properties, ServiceCache serviceCache) {
+		final var configs = new ArrayList<>(properties.getTargets());
+		if (configs.isEmpty()) {
+			final var single = new CoreDNSProperties.Target();
+			single.setConfigMap(properties.getConfigMap());
+			single.setConfigMapNamespace(properties.getConfigMapNamespace());
+			single.setConfigMapKey(properties.getConfigMapKey());
+			configs.add(single);
+		}
+
+		final var result = new ArrayList<CoreDNSTarget>();
+		final var names = new HashSet<String>();
+		final var configMaps = new HashSet<String>();
+		for (final var config : configs) {
+			final var name = config.getName() != null ? config.getName() : config.getConfigMap();
+			final var targetProperties = properties.forTarget(config);
+			final var target = new CoreDNSTarget(name, targetProperties, createService(targetProperties, serviceCache));
+
+			// One writer per ConfigMap, the shard keys of two targets in the same ConfigMap would be mixed
+			if (!names.add(name) || !configMaps.add(target.getConfigMapKey())) {
+				throw new KeightsException("Duplicate CoreDNS Target: name=[%s] configMap=[%s]", name, target.getConfigMapKey());
+			}
+			result.add(target);
+		}
+
+		targets = Collections.unmodifiableList(result);
+		log.info("CoreDNS Targets: backend=[{}] targets={}", properties.getBackend(), targets);
+	}
+
+	// ------------------------------
+
+	public List<CoreDNSTarget> list() {
+		return targets;
+	}
+
+	/**
+	 * The target by name, the first one if the name is null
+	 */
+	public CoreDNSTarget get(String name) {
+		return find(name).orElseThrow(() -> new KeightsException("CoreDNS Target Not Found: name=[%s]", name));
+	}
+
+	/**
+	 * The target by name, the first one if the name is null, or empty if there is no such target
+	 */
+	public Optional<CoreDNSTarget> find(String name) {
+		if (name == null) {
+			return Optional.of(targets.get(0));
+		}
+		return targets.stream()
+			.filter(target -> target.getName().equals(name))
+			.findFirst();
+	}
+
+	public CoreDNSTarget getByConfigMap(String namespace, String name) {
+		final var key = namespace + "/" + name;
+		return targets.stream()
+			.filter(target -> target.getConfigMapKey().equals(key))
+			.findFirst()
+			.orElse(null);
+	}
+
+	public boolean isInited() {
+		return targets.stream().allMatch(target -> target.getCoreDNSService().isInited());
+	}
+
+	public int getRequestsSize() {
+		return targets.stream().mapToInt(target -> target.getCoreDNSService().getRequestsSize()).sum();
+	}
+
+	// ------------------------------
+
+	private static ICoreDNSService createService(CoreDNSProperties properties, ServiceCache serviceCache) {
+		switch (properties.getBackend()) {
+			case Corefile:
+				return new CoreDNSService(properties, serviceCache);
+			case Hosts:
+				return new HostsCoreDNSService(properties, serviceCache);
+			default:
+				throw new KeightsException("Unsupported Backend: %s", properties.getBackend());
+		}
+	}
+}
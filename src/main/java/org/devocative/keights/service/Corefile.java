@@ -0,0 +1,267 @@
+package org.devocative.keights.service;
+
+import lombok.Getter;
+import org.devocative.keights.KeightsException;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed Corefile: the server blocks without the single-line 'rewrite name' rules of the first block, plus these rules
+ * as key (optional match type and source) -> target. The text is parsed once and re-rendered in one linear pass, with
+ * the rewrite section right after the first block header. The rewrites of the other blocks are not managed and are
+ * kept in their own block as they are.
+ */
+public class Corefile {
+	private static final String REWRITE_INDENT = "    ";
+	private static final Pattern CLUSTER_DOMAIN_NAME_PATTERN = Pattern.compile("kubernetes +([\\w.]+) ");
+	private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+	// All single-line forms of 'rewrite name', other rewrites (continue/stop, blocks, other fields) are kept as they are
+	private static final Pattern REWRITE_PATTERN = Pattern.compile(
+		"^\\s*rewrite\\s+name\\s+(?:(?<TYPE>exact|prefix|suffix|substring|regex)\\s+)?" +
+			"(?<SRC>[^\\s#]+)\\s+(?<DST>[^\\s#]+(?:\\s+answer\\s+[^#]*?)?)\\s*(?:#.*)?$");
+
+	private final List<ServerBlock> blocks;
+	private final int anchorBlock;
+	private final int length;
+	private final boolean trailingNewLine;
+
+	@Getter
+	private final String clusterDomainName;
+
+	@Getter
+	private final Map<String, String> rewrites;
+
+	// ------------------------------
+
+	private Corefile(List<ServerBlock> blocks, int anchorBlock, int length, boolean trailingNewLine,
+					 String clusterDomainName, Map<String, String> rewrites) {
+		this.blocks = blocks;
+		this.anchorBlock = anchorBlock;
+		this.length = length;
+		this.trailingNewLine = trailingNewLine;
+		this.clusterDomainName = clusterDomainName;
+		this.rewrites = Collections.unmodifiableMap(rewrites);
+	}
+
+	// ------------------------------
+
+	public static Corefile parse(String text) {
+		final var blocks = new ArrayList<ServerBlock>();
+		final var rewrites = new LinkedHashMap<String, String>();
+		String clusterDomainName = null;
+		int anchorBlock = -1;
+		int length = 0;
+		int depth = 0;
+
+		var current = new ServerBlock(null);
+		int start = 0;
+		while (start < text.length()) {
+			int end = text.indexOf('\n', start);
+			if (end < 0) {
+				end = text.length();
+			}
+			final var line = text.substring(start, end);
+			start = end + 1;
+
+			if (isKeyword(line, "import") && line.contains(RewriteShards.FILE_GLOB)) {
+				continue;
+			}
+
+			// Only the first server block is managed, or the whole text if it is a snippet, e.g. a shard
+			final var managed = anchorBlock < 0 || (current.keys != null && anchorBlock == blocks.size());
+			if (managed && isKeyword(line, "rewrite")) {
+				final var matcher = REWRITE_PATTERN.matcher(line);
+				if (matcher.matches()) {
+					final var type = matcher.group("TYPE");
+					final var key = type == null || "exact".equals(type) ?
+						matcher.group("SRC") :
+						type + " " + matcher.group("SRC");
+					rewrites.put(key, WHITESPACES.matcher(matcher.group("DST")).replaceAll(" "));
+					continue;
+				}
+			}
+
+			if (clusterDomainName == null && line.contains("kubernetes")) {
+				final var matcher = CLUSTER_DOMAIN_NAME_PATTERN.matcher(line);
+				if (matcher.find()) {
+					clusterDomainName = matcher.group(1);
+				}
+			}
+
+			final var opens = count(line, '{');
+			if (depth == 0 && opens > 0) {
+				if (!current.lines.isEmpty()) {
+					blocks.add(current);
+				}
+				current = new ServerBlock(line.substring(0, line.indexOf('{')).trim());
+				if (anchorBlock < 0) {
+					anchorBlock = blocks.size();
+				}
+			}
+			current.lines.add(line);
+			length += line.length() + 1;
+
+			depth += opens - count(line, '}');
+			if (depth <= 0) {
+				depth = 0;
+				if (current.keys != null) {
+					blocks.add(current);
+					current = new ServerBlock(null);
+				}
+			}
+		}
+		if (!current.lines.isEmpty()) {
+			blocks.add(current);
+		}
+
+		return new Corefile(
+			blocks,
+			Math.max(anchorBlock, 0),
+			length,
+			text.endsWith("\n"),
+			clusterDomainName,
+			rewrites);
+	}
+
+	public static String digest(String text) {
+		try {
+			final var digest = MessageDigest
+				.getInstance("SHA-256")
+				.digest(text.getBytes(StandardCharsets.UTF_8));
+			return new BigInteger(1, digest).toString(16);
+		} catch (NoSuchAlgorithmException e) {
+			throw new KeightsException(e);
+		}
+	}
+
+	// ------------------------------
+
+	public String render(RewriteRegistry rewriteRegistry) {
+		return render(rewriteRegistry.size() * 80, builder ->
+			rewriteRegistry.forEach((domain, fqdn) -> appendRewrite(builder, REWRITE_INDENT, domain, fqdn)));
+	}
+
+	/**
+	 * Renders the server blocks with the given line, e.g. an import of the rewrite shards, in place of the rewrites
+	 */
+	public String render(String line) {
+		return render(Map.of(), line);
+	}
+
+	/**
+	 * Renders the server blocks with the given rewrites followed by the given line, e.g. the hand-written rewrites
+	 * and the hosts plugin
+	 */
+	public String render(Map<String, String> rewrites, String line) {
+		return render(rewrites.size() * 80 + (line != null ? line.length() + 8 : 0), builder -> {
+			rewrites.forEach((domain, fqdn) -> appendRewrite(builder, REWRITE_INDENT, domain, fqdn));
+			if (line != null) {
+				builder.append(REWRITE_INDENT).append(line).append('\n');
+			}
+		});
+	}
+
+	/**
+	 * The rewrites as a snippet, one line each without indent, e.g. the content of a shard
+	 */
+	public static String renderRewrites(Map<String, String> rewrites) {
+		final var builder = new StringBuilder(rewrites.size() * 80);
+		rewrites.forEach((domain, fqdn) -> appendRewrite(builder, "", domain, fqdn));
+		return builder.toString();
+	}
+
+	public boolean containsLine(Predicate<String> predicate) {
+		for (final var block : blocks) {
+			for (final var line : block.lines) {
+				if (predicate.test(line)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public List<String> getServerBlockKeys() {
+		final var result = new ArrayList<String>();
+		for (final var block : blocks) {
+			if (block.keys != null) {
+				result.add(block.keys);
+			}
+		}
+		return result;
+	}
+
+	// ------------------------------
+
+	private String render(int extraLength, Consumer<StringBuilder> rewriteSection) {
+		final var builder = new StringBuilder(length + extraLength);
+
+		for (int b = 0; b < blocks.size(); b++) {
+			final var lines = blocks.get(b).lines;
+			for (int l = 0; l < lines.size(); l++) {
+				builder.append(lines.get(l)).append('\n');
+
+				if (b == anchorBlock && l == 0) {
+					rewriteSection.accept(builder);
+				}
+			}
+		}
+
+		if (blocks.isEmpty()) {
+			rewriteSection.accept(builder);
+		}
+
+		if (builder.length() > 0 && !trailingNewLine) {
+			builder.setLength(builder.length() - 1);
+		}
+		return builder.toString();
+	}
+
+	private static void appendRewrite(StringBuilder builder, String indent, String domain, String fqdn) {
+		builder
+			.append(indent)
+			.append("rewrite name ")
+			.append(domain)
+			.append(' ')
+			.append(fqdn)
+			.append('\n');
+	}
+
+	private static boolean isKeyword(String line, String keyword) {
+		for (int i = 0; i < line.length(); i++) {
+			if (!Character.isWhitespace(line.charAt(i))) {
+				return line.startsWith(keyword, i);
+			}
+		}
+		return false;
+	}
+
+	private static int count(String line, char c) {
+		int result = 0;
+		for (int i = 0; i < line.length(); i++) {
+			if (line.charAt(i) == c) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	// ------------------------------
+
+	private static class ServerBlock {
+		private final String keys;
+		private final List<String> lines = new ArrayList<>();
+
+		private ServerBlock(String keys) {
+			this.keys = keys;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package org.devocative.keights.service;
+
+/**
+ * A lower-case domain name as a map key of {@link DnsRecords}. The keys in the maps are immutable; the responder
+ * fills one mutable instance per query and looks it up as is, so a query needs no String. Equal only to another
+ * DnsName, the hash is the one of the same String.
+ */
+final class DnsName implements CharSequence {
+	private final char[] chars;
+	private final int offset;
+	private int length;
+	private int hash;
+
+	// ------------------------------
+
+	/**
+	 * An empty, mutable name of the given capacity, filled by append()
+	 */
+	DnsName(int capacity) {
+		this(new char[capacity], 0, 0);
+	}
+
+	private DnsName(char[] chars, int offset, int length) {
+		this.chars = chars;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	// ------------------------------
+
+	static DnsName of(String name) {
+		return new DnsName(name.toCharArray(), 0, name.length());
+	}
+
+	// ------------------------------
+
+	void clear() {
+		length = 0;
+		hash = 0;
+	}
+
+	/**
+	 * Returns false if the capacity is reached
+	 */
+	boolean append(char c) {
+		if (offset + length >= chars.length) {
+			return false;
+		}
+		chars[offset + length++] = c;
+		hash = 0;
+		return true;
+	}
+
+	/**
+	 * A view of this name from the given index, e.g. the suffix after the first label, sharing the chars
+	 */
+	DnsName from(int start) {
+		return new DnsName(chars, offset + start, length - start);
+	}
+
+	int indexOf(char c) {
+		for (int i = 0; i < length; i++) {
+			if (chars[offset + i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		return chars[offset + index];
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof DnsName other) || other.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (chars[offset + i] != other.chars[other.offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		var result = hash;
+		if (result == 0) {
+			for (int i = 0; i < length; i++) {
+				result = 31 * result + chars[offset + i];
+			}
+			hash = result;
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, offset, length);
+	}
+}
@@ -0,0 +1,181 @@
+package org.devocative.keights.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.dto.ERewriteType;
+import org.devocative.keights.dto.RewriteRule;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The annotated domains served by the DNS responder, updated directly by the service events, so a change is served
+ * without any ConfigMap write. A domain is resolved to the ClusterIP of the service in the informer cache at query
+ * time. Exact and suffix rules are supported, a suffix rule maps X.suffix to the service X of the namespace. In the
+ * endpoints mode, a service with no ready endpoint is not resolved, and a headless one is resolved to its ready
+ * endpoint addresses in turn. A domain claimed by several services is resolved to the last one, and falls back to
+ * another one when it is released.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DnsRecords {
+	private final ServiceCache serviceCache;
+	private final ServiceEndpoints serviceEndpoints;
+
+	// domain -> namespace/name
+	private final Map<DnsName, String> exact = new ConcurrentHashMap<>();
+
+	// .suffix -> namespace
+	private final Map<DnsName, String> suffixes = new ConcurrentHashMap<>();
+
+	// domain or .suffix -> namespace/name of each claiming service -> value, guarded by update()
+	private final Map<String, LinkedHashMap<String, String>> exactClaims = new HashMap<>();
+	private final Map<String, LinkedHashMap<String, String>> suffixClaims = new HashMap<>();
+
+	private final Map<String, String> annotations = new ConcurrentHashMap<>();
+	private final Map<String, byte[]> addresses = new ConcurrentHashMap<>();
+
+	// ------------------------------
+
+	/**
+	 * Replaces the domains of the service with the ones of the annotation value, null removes them
+	 */
+	public synchronized void update(String namespace, String name, String domainName) {
+		final var owner = namespace + "/" + name;
+		final var old = domainName != null ? annotations.put(owner, domainName) : annotations.remove(owner);
+		if (domainName != null && domainName.equals(old)) {
+			return;
+		}
+
+		if (old != null) {
+			for (final var rule : parse(owner, old)) {
+				if (rule.getType() == ERewriteType.Exact) {
+					release(exact, exactClaims, normalize(rule.getPattern()), owner);
+				} else if (rule.getType() == ERewriteType.Suffix) {
+					release(suffixes, suffixClaims, normalize(rule.getPattern()), owner);
+				}
+			}
+		}
+
+		if (domainName != null) {
+			for (final var rule : parse(owner, domainName)) {
+				if (rule.getType() == ERewriteType.Exact) {
+					claim(exact, exactClaims, normalize(rule.getPattern()), owner, owner);
+				} else if (rule.getType() == ERewriteType.Suffix) {
+					claim(suffixes, suffixClaims, normalize(rule.getPattern()), owner, namespace);
+				} else {
+					log.debug("DNS Records: rule not served, service=[{}] rule=[{}]", owner, rule.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The address of the lower-case domain without the trailing dot, or null if it is unknown or has no address
+	 */
+	public byte[] resolve(String domain) {
+		return resolve(DnsName.of(domain));
+	}
+
+	/**
+	 * Same as resolve(String), for the reused name of the responder: an exact domain is looked up without building a
+	 * String, a suffix one still builds its service key
+	 */
+	byte[] resolve(DnsName domain) {
+		String key = null;
+
+		final var owner = exact.get(domain);
+		if (owner != null) {
+			key = owner;
+		} else if (!suffixes.isEmpty()) {
+			final var dot = domain.indexOf('.');
+			if (dot > 0) {
+				final var namespace = suffixes.get(domain.from(dot));
+				if (namespace != null) {
+					key = namespace + "/" + domain.subSequence(0, dot);
+				}
+			}
+		}
+
+		if (key == null) {
+			return null;
+		}
+
+		final var clusterIP = serviceCache.getClusterIP(key);
+		if (!serviceEndpoints.isEnabled()) {
+			return clusterIP != null ? addresses.computeIfAbsent(clusterIP, DnsRecords::toAddress) : null;
+		}
+
+		if (!serviceEndpoints.isReady(serviceCache.get(key))) {
+			return null;
+		}
+
+		// Endpoint addresses come and go with the pods, so they are not kept
+		if (clusterIP == null) {
+			final var address = serviceEndpoints.nextReadyAddress(key);
+			return address != null ? toAddress(address) : null;
+		}
+		return addresses.computeIfAbsent(clusterIP, DnsRecords::toAddress);
+	}
+
+	public int size() {
+		return exact.size() + suffixes.size();
+	}
+
+	// ------------------------------
+
+	private static void claim(Map<DnsName, String> records, Map<String, LinkedHashMap<String, String>> claims,
+							  String key, String owner, String value) {
+		final var keyClaims = claims.computeIfAbsent(key, k -> new LinkedHashMap<>());
+		keyClaims.remove(owner);
+		keyClaims.put(owner, value);
+		records.put(DnsName.of(key), value);
+	}
+
+	private static void release(Map<DnsName, String> records, Map<String, LinkedHashMap<String, String>> claims,
+								String key, String owner) {
+		final var keyClaims = claims.get(key);
+		if (keyClaims == null || keyClaims.remove(owner) == null) {
+			return;
+		}
+
+		if (keyClaims.isEmpty()) {
+			claims.remove(key);
+			records.remove(DnsName.of(key));
+			return;
+		}
+
+		String latest = null;
+		for (final var value : keyClaims.values()) {
+			latest = value;
+		}
+		records.put(DnsName.of(key), latest);
+	}
+
+	private static List<RewriteRule> parse(String owner, String domainName) {
+		return RewriteRule.parseAll(domainName,
+			e -> log.warn("DNS Records: skip rule, service=[{}] {}", owner, e.getMessage()));
+	}
+
+	private static String normalize(String domain) {
+		final var lower = domain.toLowerCase();
+		return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+	}
+
+	// ClusterIP and endpoint addresses are IP literals, so no lookup is done
+	private static byte[] toAddress(String ip) {
+		try {
+			return InetAddress.getByName(ip).getAddress();
+		} catch (UnknownHostException e) {
+			log.warn("DNS Records: invalid address=[{}]", ip);
+			return null;
+		}
+	}
+}
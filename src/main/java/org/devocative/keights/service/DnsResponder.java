@@ -0,0 +1,380 @@
+package org.devocative.keights.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.KeightsException;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A minimal authoritative DNS server on UDP and TCP, answering A/AAAA queries of the annotated domains from
+ * {@link DnsRecords}. One selector thread serves both transports with buffers allocated once (per connection for
+ * TCP), a query is answered without any lock on the hot path. The name of the question is read into a reused
+ * {@link DnsName} and looked up as is, without building a String per query. Unknown names get NXDOMAIN, so CoreDNS should forward
+ * only the zones of the annotated domains here.
+ */
+@Slf4j
+@Service
+public class DnsResponder {
+	private static final int HEADER_SIZE = 12;
+	private static final int MAX_QUERY_SIZE = 1232;
+	private static final int MAX_RESPONSE_SIZE = 512;
+	private static final int MAX_NAME_LENGTH = 253;
+
+	private static final int FLAG_QR = 0x8000;
+	private static final int FLAG_AA = 0x0400;
+	private static final int FLAG_RD = 0x0100;
+	private static final int OPCODE_MASK = 0x7800;
+
+	private static final int RCODE_FORMERR = 1;
+	private static final int RCODE_NXDOMAIN = 3;
+	private static final int RCODE_NOTIMP = 4;
+
+	private static final int TYPE_A = 1;
+	private static final int TYPE_AAAA = 28;
+	private static final int TYPE_ANY = 255;
+	private static final int CLASS_IN = 1;
+	private static final int CLASS_ANY = 255;
+
+	private final CoreDNSProperties.Responder config;
+	private final DnsRecords records;
+	private final int ttl;
+
+	// Used only by the selector thread
+	private final ByteBuffer udpIn = ByteBuffer.allocateDirect(MAX_QUERY_SIZE);
+	private final ByteBuffer udpOut = ByteBuffer.allocateDirect(MAX_RESPONSE_SIZE);
+	private final DnsName name = new DnsName(MAX_NAME_LENGTH);
+
+	private Selector selector;
+	private DatagramChannel udp;
+	private ServerSocketChannel tcp;
+	private Thread thread;
+	private volatile boolean running = false;
+
+	// ------------------------------
+
+	public DnsResponder(CoreDNSProperties properties, DnsRecords records) {
+		this.config = properties.getResponder();
+		this.records = records;
+		this.ttl = (int) config.getTtl().toSeconds();
+	}
+
+	// ------------------------------
+
+	@PostConstruct
+	public void init() {
+		if (config.isEnabled()) {
+			start();
+		}
+	}
+
+	public synchronized void start() {
+		try {
+			selector = Selector.open();
+
+			udp = DatagramChannel.open();
+			udp.configureBlocking(false);
+			udp.bind(new InetSocketAddress(config.getBindAddress(), config.getPort()));
+			udp.register(selector, SelectionKey.OP_READ);
+
+			// Same port for TCP, also when an ephemeral one is picked for UDP
+			tcp = ServerSocketChannel.open();
+			tcp.configureBlocking(false);
+			tcp.bind(new InetSocketAddress(config.getBindAddress(), getPort()));
+			tcp.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			close();
+			throw new KeightsException(e, "DNS Responder Bind Failed: address=[%s] port=[%s]",
+				config.getBindAddress(), config.getPort());
+		}
+
+		running = true;
+		thread = new Thread(this::serve, "keights-dns");
+		thread.setDaemon(true);
+		thread.start();
+		log.info("DNS Responder Started: address=[{}] port=[{}]", config.getBindAddress(), getPort());
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (!running) {
+			return;
+		}
+
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		close();
+		log.info("DNS Responder Stopped");
+	}
+
+	public int getPort() {
+		return udp.socket().getLocalPort();
+	}
+
+	// ------------------------------
+
+	private void serve() {
+		while (running) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				log.error("DNS Responder: select failed", e);
+				break;
+			}
+
+			final var iterator = selector.selectedKeys().iterator();
+			while (iterator.hasNext()) {
+				final var key = iterator.next();
+				iterator.remove();
+
+				try {
+					if (!key.isValid()) {
+						continue;
+					}
+
+					if (key.channel() == udp) {
+						serveUdp();
+					} else if (key.isAcceptable()) {
+						accept();
+					} else if (key.isReadable()) {
+						readTcp(key);
+					} else if (key.isWritable()) {
+						writeTcp(key);
+					}
+				} catch (IOException | RuntimeException e) {
+					log.warn("DNS Responder: {}", e.toString());
+					if (key.channel() instanceof SocketChannel) {
+						closeTcp(key);
+					}
+				}
+			}
+		}
+	}
+
+	private void serveUdp() throws IOException {
+		while (true) {
+			udpIn.clear();
+			final var client = udp.receive(udpIn);
+			if (client == null) {
+				return;
+			}
+
+			udpIn.flip();
+			udpOut.clear();
+			if (respond(udpIn, 0, udpIn.limit(), udpOut)) {
+				udpOut.flip();
+				// A full socket buffer drops the response, the client retries as for any lost datagram
+				udp.send(udpOut, client);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		final var channel = tcp.accept();
+		if (channel != null) {
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new TcpConnection());
+		}
+	}
+
+	private void readTcp(SelectionKey key) throws IOException {
+		final var channel = (SocketChannel) key.channel();
+		final var connection = (TcpConnection) key.attachment();
+		if (channel.read(connection.in) < 0) {
+			closeTcp(key);
+			return;
+		}
+		processTcp(key, channel, connection);
+	}
+
+	private void writeTcp(SelectionKey key) throws IOException {
+		final var channel = (SocketChannel) key.channel();
+		final var connection = (TcpConnection) key.attachment();
+		channel.write(connection.out);
+		if (!connection.out.hasRemaining()) {
+			processTcp(key, channel, connection);
+		}
+	}
+
+	// Length-prefixed queries, pipelined ones are answered in order, one pending response at a time
+	private void processTcp(SelectionKey key, SocketChannel channel, TcpConnection connection) throws IOException {
+		final var in = connection.in;
+		final var out = connection.out;
+
+		while (!out.hasRemaining()) {
+			in.flip();
+			if (in.remaining() < 2) {
+				in.compact();
+				break;
+			}
+
+			final var length = in.getShort(in.position()) & 0xFFFF;
+			if (length > MAX_QUERY_SIZE) {
+				closeTcp(key);
+				return;
+			}
+			if (in.remaining() < 2 + length) {
+				in.compact();
+				break;
+			}
+
+			out.clear();
+			out.position(2);
+			final var answered = respond(in, in.position() + 2, length, out);
+			in.position(in.position() + 2 + length);
+			in.compact();
+
+			if (answered) {
+				out.putShort(0, (short) (out.position() - 2));
+				out.flip();
+				channel.write(out);
+			} else {
+				out.limit(0);
+			}
+		}
+
+		key.interestOps(out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Writes the response of the query in [offset, offset + length) of the input, false if it must be dropped
+	 */
+	private boolean respond(ByteBuffer in, int offset, int length, ByteBuffer out) {
+		if (length < HEADER_SIZE) {
+			return false;
+		}
+
+		final var flags = in.getShort(offset + 2) & 0xFFFF;
+		if ((flags & FLAG_QR) != 0) {
+			return false;
+		}
+
+		final var questionStart = offset + HEADER_SIZE;
+		var questionEnd = questionStart;
+		var rcode = 0;
+		byte[] address = null;
+		var answer = false;
+
+		if ((flags & OPCODE_MASK) != 0) {
+			rcode = RCODE_NOTIMP;
+		} else if ((in.getShort(offset + 4) & 0xFFFF) != 1) {
+			rcode = RCODE_FORMERR;
+		} else {
+			questionEnd = readQuestion(in, questionStart, offset + length);
+			if (questionEnd < 0) {
+				questionEnd = questionStart;
+				rcode = RCODE_FORMERR;
+			} else {
+				address = records.resolve(name);
+				if (address == null) {
+					rcode = RCODE_NXDOMAIN;
+				} else {
+					final var type = in.getShort(questionEnd - 4) & 0xFFFF;
+					final var clazz = in.getShort(questionEnd - 2) & 0xFFFF;
+					final var addressType = address.length == 4 ? TYPE_A : TYPE_AAAA;
+					answer = (clazz == CLASS_IN || clazz == CLASS_ANY) && (type == addressType || type == TYPE_ANY);
+				}
+			}
+		}
+
+		out.putShort(in.getShort(offset));
+		out.putShort((short) (FLAG_QR | FLAG_AA | (flags & (OPCODE_MASK | FLAG_RD)) | rcode));
+		out.putShort((short) (questionEnd > questionStart ? 1 : 0));
+		out.putShort((short) (answer ? 1 : 0));
+		out.putInt(0);
+
+		for (int i = questionStart; i < questionEnd; i++) {
+			out.put(in.get(i));
+		}
+
+		if (answer) {
+			out.putShort((short) (0xC000 | HEADER_SIZE));
+			out.putShort((short) (address.length == 4 ? TYPE_A : TYPE_AAAA));
+			out.putShort((short) CLASS_IN);
+			out.putInt(ttl);
+			out.putShort((short) address.length);
+			out.put(address);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the lower-cased name of the question, returns the end of the question (after type and class) or -1 if it
+	 * is malformed, compressed names are not expected in a query
+	 */
+	private int readQuestion(ByteBuffer in, int position, int limit) {
+		name.clear();
+		while (position < limit) {
+			final var labelLength = in.get(position++) & 0xFF;
+			if (labelLength == 0) {
+				return position + 4 <= limit ? position + 4 : -1;
+			}
+			if ((labelLength & 0xC0) != 0 || position + labelLength > limit) {
+				return -1;
+			}
+
+			if (name.length() > 0 && !name.append('.')) {
+				return -1;
+			}
+			for (int i = 0; i < labelLength; i++) {
+				final var c = (char) (in.get(position++) & 0xFF);
+				if (!name.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c)) {
+					return -1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void closeTcp(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			log.debug("DNS Responder: close failed", e);
+		}
+	}
+
+	private void close() {
+		if (selector != null) {
+			selector.keys().forEach(key -> {
+				if (key.channel() instanceof SocketChannel) {
+					closeTcp(key);
+				}
+			});
+		}
+
+		for (final var closeable : new Closeable[]{tcp, udp, selector}) {
+			if (closeable != null) {
+				try {
+					closeable.close();
+				} catch (IOException e) {
+					log.warn("DNS Responder: close failed", e);
+				}
+			}
+		}
+	}
+
+	// ------------------------------
+
+	private static class TcpConnection {
+		private final ByteBuffer in = ByteBuffer.allocate(2 + MAX_QUERY_SIZE);
+		private final ByteBuffer out = ByteBuffer.allocate(2 + MAX_RESPONSE_SIZE).limit(0);
+	}
+}
@@ -0,0 +1,176 @@
+package org.devocative.keights.service;
+
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.informer.ListerWatcher;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.DiscoveryV1Api;
+import io.kubernetes.client.openapi.models.V1Endpoint;
+import io.kubernetes.client.openapi.models.V1EndpointConditions;
+import io.kubernetes.client.openapi.models.V1EndpointSlice;
+import io.kubernetes.client.openapi.models.V1EndpointSliceList;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Watch;
+import io.kubernetes.client.util.Watchable;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Lists and watches the EndpointSlices of the services in one namespace (or all, if namespace is null). The labels of
+ * a service are copied to its slices, so the label selector of the service watch scopes the slices on the API server
+ * too. Only the service name label, the address type and the addresses with the ready condition are kept in the cache.
+ */
+@Slf4j
+public class EndpointSliceListerWatcher implements ListerWatcher<V1EndpointSlice, V1EndpointSliceList> {
+	private final DiscoveryV1Api discoveryV1Api;
+	private final String namespace;
+	private final String labelSelector;
+
+	// ------------------------------
+
+	public EndpointSliceListerWatcher(DiscoveryV1Api discoveryV1Api, String namespace, String labelSelector) {
+		this.discoveryV1Api = discoveryV1Api;
+		this.namespace = namespace;
+		this.labelSelector = labelSelector != null ?
+			ServiceEndpoints.SERVICE_NAME_LABEL + "," + labelSelector :
+			ServiceEndpoints.SERVICE_NAME_LABEL;
+	}
+
+	// ------------------------------
+
+	@Override
+	public V1EndpointSliceList list(CallGeneratorParams params) throws ApiException {
+		final var list = discoveryV1Api
+			.getApiClient()
+			.<V1EndpointSliceList>execute(createCall(params), V1EndpointSliceList.class)
+			.getData();
+
+		if (list.getItems() != null) {
+			final var items = new ArrayList<V1EndpointSlice>(list.getItems().size());
+			for (final var item : list.getItems()) {
+				items.add(trim(item));
+			}
+			list.setItems(items);
+		}
+		return list;
+	}
+
+	@Override
+	public Watchable<V1EndpointSlice> watch(CallGeneratorParams params) throws ApiException {
+		final Watchable<V1EndpointSlice> watch = Watch.createWatch(
+			discoveryV1Api.getApiClient(),
+			createCall(params),
+			new TypeToken<Watch.Response<V1EndpointSlice>>() {
+			}.getType());
+
+		return new EndpointSliceWatch(watch);
+	}
+
+	// ------------------------------
+
+	private Call createCall(CallGeneratorParams params) throws ApiException {
+		log.debug("EndpointSlices, ListerWatcher.CallGeneratorParams: namespace=[{}], labelSelector=[{}], " +
+				"resourceVersion=[{}], timeoutSeconds=[{}], watch=[{}]",
+			namespace, labelSelector, params.resourceVersion, params.timeoutSeconds, params.watch);
+
+		if (namespace == null) {
+			return discoveryV1Api.listEndpointSliceForAllNamespacesCall(
+				null,
+				null,
+				null,
+				labelSelector,
+				null,
+				null,
+				params.resourceVersion,
+				null,
+				null,
+				params.timeoutSeconds,
+				params.watch,
+				null);
+		}
+
+		return discoveryV1Api.listNamespacedEndpointSliceCall(
+			namespace,
+			null,
+			null,
+			null,
+			null,
+			labelSelector,
+			null,
+			params.resourceVersion,
+			null,
+			null,
+			params.timeoutSeconds,
+			params.watch,
+			null);
+	}
+
+	private static V1EndpointSlice trim(V1EndpointSlice slice) {
+		final var md = slice.getMetadata();
+		if (md == null) {
+			return slice;
+		}
+
+		final var serviceName = md.getLabels() != null ? md.getLabels().get(ServiceEndpoints.SERVICE_NAME_LABEL) : null;
+		final var endpoints = new ArrayList<V1Endpoint>(slice.getEndpoints() != null ? slice.getEndpoints().size() : 0);
+		if (slice.getEndpoints() != null) {
+			for (final var endpoint : slice.getEndpoints()) {
+				final var conditions = endpoint.getConditions();
+				endpoints.add(new V1Endpoint()
+					.addresses(endpoint.getAddresses())
+					.conditions(conditions != null ? new V1EndpointConditions().ready(conditions.getReady()) : null));
+			}
+		}
+
+		return new V1EndpointSlice()
+			.apiVersion(slice.getApiVersion())
+			.kind(slice.getKind())
+			.metadata(new V1ObjectMeta()
+				.name(md.getName())
+				.namespace(md.getNamespace())
+				.uid(md.getUid())
+				.resourceVersion(md.getResourceVersion())
+				.labels(serviceName != null ? Map.of(ServiceEndpoints.SERVICE_NAME_LABEL, serviceName) : null))
+			.addressType(slice.getAddressType())
+			.endpoints(endpoints);
+	}
+
+	// ------------------------------
+
+	private static class EndpointSliceWatch implements Watchable<V1EndpointSlice> {
+		private final Watchable<V1EndpointSlice> watch;
+
+		private EndpointSliceWatch(Watchable<V1EndpointSlice> watch) {
+			this.watch = watch;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return watch.hasNext();
+		}
+
+		@Override
+		public Watch.Response<V1EndpointSlice> next() {
+			final var response = watch.next();
+			if (response != null && response.object != null) {
+				response.object = trim(response.object);
+			}
+			return response;
+		}
+
+		@Override
+		public Iterator<Watch.Response<V1EndpointSlice>> iterator() {
+			return this;
+		}
+
+		@Override
+		public void close() throws IOException {
+			watch.close();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.devocative.keights.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces signals into one flush: the flush runs after a quiet period with no new signal, but never later than
+ * the max delay after the first signal. At most one flush runs at a time; signals received during a flush start
+ * the window of a follow-up flush.
+ */
+@Slf4j
+public class FlushDebouncer {
+	private final TaskScheduler taskScheduler;
+	private final Runnable flush;
+	private final long quietPeriodNanos;
+	private final long maxDelayNanos;
+
+	private final DistributionSummary coalescedEvents;
+	private final Timer flushLatency;
+
+	private int events = 0;
+	private long firstEventNanos;
+	private long lastEventNanos;
+	private boolean scheduled = false;
+	private boolean running = false;
+
+	// ------------------------------
+
+	public FlushDebouncer(TaskScheduler taskScheduler, Duration quietPeriod, Duration maxDelay, MeterRegistry meterRegistry, Runnable flush) {
+		this.taskScheduler = taskScheduler;
+		this.flush = flush;
+		this.quietPeriodNanos = quietPeriod.toNanos();
+		this.maxDelayNanos = Math.max(maxDelay.toNanos(), quietPeriodNanos);
+
+		coalescedEvents = DistributionSummary
+			.builder("keights.flush.events")
+			.description("Number of events coalesced into one flush")
+			.register(meterRegistry);
+		flushLatency = Timer
+			.builder("keights.flush.latency")
+			.description("Time from the first coalesced event to the end of its flush")
+			.register(meterRegistry);
+	}
+
+	// ------------------------------
+
+	public synchronized void signal() {
+		final var now = System.nanoTime();
+		if (events == 0) {
+			firstEventNanos = now;
+		}
+		lastEventNanos = now;
+		events++;
+
+		if (!scheduled && !running) {
+			schedule(quietPeriodNanos);
+		}
+	}
+
+	public synchronized boolean isIdle() {
+		return events == 0 && !scheduled && !running;
+	}
+
+	// ------------------------------
+
+	private void check() {
+		final int coalesced;
+		final long first;
+
+		synchronized (this) {
+			scheduled = false;
+			if (events == 0 || running) {
+				return;
+			}
+
+			final var remaining = remainingNanos(System.nanoTime());
+			if (remaining > 0) {
+				schedule(remaining);
+				return;
+			}
+
+			running = true;
+			coalesced = events;
+			first = firstEventNanos;
+			events = 0;
+		}
+
+		log.debug("Flush: coalesced events=[{}]", coalesced);
+		try {
+			flush.run();
+		} finally {
+			final var end = System.nanoTime();
+			coalescedEvents.record(coalesced);
+			flushLatency.record(end - first, TimeUnit.NANOSECONDS);
+
+			synchronized (this) {
+				running = false;
+				if (events > 0 && !scheduled) {
+					schedule(Math.max(remainingNanos(end), 0));
+				}
+			}
+		}
+	}
+
+	private long remainingNanos(long now) {
+		final var quietDeadline = lastEventNanos + quietPeriodNanos;
+		final var maxDeadline = firstEventNanos + maxDelayNanos;
+		return Math.min(quietDeadline, maxDeadline) - now;
+	}
+
+	private void schedule(long delayNanos) {
+		scheduled = true;
+		taskScheduler.schedule(this::check, Instant.now().plusNanos(delayNanos));
+	}
+}
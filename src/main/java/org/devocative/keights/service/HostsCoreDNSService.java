@@ -0,0 +1,157 @@
+package org.devocative.keights.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.KeightsException;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.dto.ERewriteType;
+import org.devocative.keights.dto.EEventType;
+import org.devocative.keights.dto.RewriteRequest;
+import org.devocative.keights.dto.RewriteRule;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the rewrites as 'ClusterIP domain' lines of a hosts file key, read by the CoreDNS hosts plugin on its own
+ * reload interval, so a change does not reload the whole CoreDNS config. The Corefile is written only once, to add
+ * the hosts plugin to the first server block. Only exact rules can be served, from the ClusterIP in the informer cache.
+ */
+@Slf4j
+public class HostsCoreDNSService extends AbstractCoreDNSService {
+	private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+
+	private final ServiceCache serviceCache;
+	private final String hostsFile;
+
+	private volatile Corefile corefile;
+	private boolean corefileClean = false;
+
+	// ------------------------------
+
+	public HostsCoreDNSService(CoreDNSProperties properties, ServiceCache serviceCache) {
+		super(properties);
+		this.serviceCache = serviceCache;
+		this.hostsFile = properties.getHosts().getPath() + "/" + properties.getHosts().getKey();
+	}
+
+	// ------------------------------
+
+	@Override
+	protected Map<String, String> parseData(EEventType event, Map<String, String> data) {
+		final var coreDNSConfig = data.get(properties.getConfigMapKey());
+		if (coreDNSConfig == null) {
+			throw new KeightsException("CoreDNS ConfigMap Key Not Found: key=[%s]", properties.getConfigMapKey());
+		}
+
+		log.info("Handle CoreDNS: event=[{}] length=[{}]", event, coreDNSConfig.length());
+		CONFIG_LOG.debug("Handle CoreDNS: Corefile\n{}", coreDNSConfig);
+
+		corefile = Corefile.parse(coreDNSConfig);
+		corefileClean = renderCorefile().equals(coreDNSConfig);
+		log.info("Cluster DomainName = [{}], Server Blocks = {}, Hosts Plugin = [{}]",
+			corefile.getClusterDomainName(), corefile.getServerBlockKeys(), corefileClean);
+
+		final var hosts = data.get(properties.getHosts().getKey());
+		return hosts != null ? parseHosts(hosts) : new LinkedHashMap<>();
+	}
+
+	@Override
+	protected Optional<Map<String, String>> renderData() {
+		if (corefileClean && isRewritesUnchanged()) {
+			log.info("CoreDNS Hosts Unchanged, Nothing To Write");
+			return Optional.empty();
+		}
+
+		final var data = new TreeMap<String, String>();
+		if (!corefileClean) {
+			final var newConfig = renderCorefile();
+			log.info("CoreDNS New Config, Add Hosts Plugin: length=[{}]", newConfig.length());
+			CONFIG_LOG.debug("CoreDNS New Config:\n{}", newConfig);
+			data.put(properties.getConfigMapKey(), newConfig);
+		}
+
+		final var hosts = renderHosts();
+		if (data.isEmpty() && Corefile.digest(hosts).equals(getDigests().get(properties.getHosts().getKey()))) {
+			log.info("CoreDNS Hosts Unchanged, Nothing To Write");
+			return Optional.empty();
+		}
+
+		log.info("CoreDNS New Hosts: size=[{}]", REWRITES.size());
+		data.put(properties.getHosts().getKey(), hosts);
+		return Optional.of(data);
+	}
+
+	@Override
+	protected void commitData() {
+		corefileClean = true;
+	}
+
+	@Override
+	protected String getMainKey() {
+		return properties.getHosts().getKey();
+	}
+
+	@Override
+	protected boolean isManagedKey(String key) {
+		return key.equals(properties.getConfigMapKey()) || key.equals(properties.getHosts().getKey());
+	}
+
+	@Override
+	protected String getServiceTarget(RewriteRequest request) {
+		return serviceCache.getClusterIP(request.getServiceNamespace(), request.getServiceName());
+	}
+
+	@Override
+	protected String getRuleTarget(RewriteRule rule, RewriteRequest request) {
+		return rule.getType() == ERewriteType.Exact ? getServiceTarget(request) : null;
+	}
+
+	// ------------------------------
+
+	// The rewrite lines are not managed by this backend and are kept, the shard imports are dropped, and the hosts
+	// plugin is added once
+	private String renderCorefile() {
+		final var installed = corefile.containsLine(line -> {
+			final var trimmed = line.trim();
+			return trimmed.startsWith("hosts ") && trimmed.contains(hostsFile);
+		});
+
+		if (installed) {
+			return corefile.render(corefile.getRewrites(), null);
+		}
+
+		final var hosts = properties.getHosts();
+		return corefile.render(corefile.getRewrites(), String.format(
+			"hosts %s {\n        ttl %s\n        reload %ss\n        fallthrough\n    }",
+			hostsFile, hosts.getTtl().toSeconds(), hosts.getReload().toSeconds()));
+	}
+
+	private String renderHosts() {
+		final var builder = new StringBuilder(REWRITES.size() * 48);
+		REWRITES.forEach((domain, ip) -> builder
+			.append(ip)
+			.append(' ')
+			.append(domain)
+			.append('\n'));
+		return builder.toString();
+	}
+
+	private static Map<String, String> parseHosts(String hosts) {
+		final var result = new LinkedHashMap<String, String>();
+		for (var line : hosts.split("\n")) {
+			final var comment = line.indexOf('#');
+			if (comment >= 0) {
+				line = line.substring(0, comment);
+			}
+
+			final var parts = WHITESPACES.split(line.trim());
+			for (int i = 1; i < parts.length; i++) {
+				result.put(parts[i], parts[0]);
+			}
+		}
+		return result;
+	}
+}
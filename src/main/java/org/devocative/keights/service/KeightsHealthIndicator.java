@@ -0,0 +1,23 @@
+package org.devocative.keights.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Part of the readiness group, see application.yml
+ */
+@RequiredArgsConstructor
+@Component
+public class KeightsHealthIndicator implements HealthIndicator {
+	private final KeightsWatchService keightsWatchService;
+	private final LeaderElectionService leaderElection;
+
+	@Override
+	public Health health() {
+		return (keightsWatchService.isReady() ? Health.up() : Health.outOfService())
+			.withDetail("leader", leaderElection.isLeader())
+			.build();
+	}
+}
@@ -0,0 +1,158 @@
+package org.devocative.keights.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.devocative.keights.dto.EEventType;
+import org.devocative.keights.dto.RewriteDrift;
+import org.devocative.keights.dto.RewriteRequest;
+import org.devocative.keights.iservice.ICoreDNSService;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class KeightsMetrics {
+	private final MeterRegistry meterRegistry;
+
+	private final Map<String, Counter> informerEvents = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> corefileBytes = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> corefileLines = new ConcurrentHashMap<>();
+
+	@Getter
+	private final Timer processRequestsTimer;
+
+	@Getter
+	private final Timer writeTimer;
+
+	private final Counter writeConflicts;
+	private final Counter writeFailures;
+	private final Timer rewriteApplyTimer;
+
+	@Getter
+	private final Timer driftCheckTimer;
+
+	private final Counter driftMissing;
+	private final Counter driftStale;
+
+	// ------------------------------
+
+	public KeightsMetrics(MeterRegistry meterRegistry, CoreDNSTargets targets) {
+		this.meterRegistry = meterRegistry;
+
+		for (final var target : targets.list()) {
+			final var name = target.getName();
+			final var bytes = corefileBytes.computeIfAbsent(name, k -> new AtomicLong());
+			final var lines = corefileLines.computeIfAbsent(name, k -> new AtomicLong());
+
+			Gauge
+				.builder("keights.requests.pending", target.getCoreDNSService(), ICoreDNSService::getRequestsSize)
+				.description("Rewrite requests waiting for the next flush")
+				.tag("target", name)
+				.register(meterRegistry);
+			Gauge
+				.builder("keights.rewrites", target.getCoreDNSService(), ICoreDNSService::getRewritesSize)
+				.description("Rewrites in the registry")
+				.tag("target", name)
+				.register(meterRegistry);
+			Gauge
+				.builder("keights.corefile.size", bytes, AtomicLong::get)
+				.description("Size of the current Corefile")
+				.baseUnit("bytes")
+				.tag("target", name)
+				.register(meterRegistry);
+			Gauge
+				.builder("keights.corefile.lines", lines, AtomicLong::get)
+				.description("Lines of the current Corefile")
+				.tag("target", name)
+				.register(meterRegistry);
+		}
+
+		processRequestsTimer = Timer
+			.builder("keights.process.requests")
+			.description("Duration of applying the queued requests and rendering the Corefile")
+			.register(meterRegistry);
+		writeTimer = Timer
+			.builder("keights.configmap.write")
+			.description("Duration of writing the CoreDNS ConfigMap, retries included")
+			.register(meterRegistry);
+		writeConflicts = Counter
+			.builder("keights.configmap.write.conflicts")
+			.description("Conflicts (409) while writing the CoreDNS ConfigMap")
+			.register(meterRegistry);
+		writeFailures = Counter
+			.builder("keights.configmap.write.failures")
+			.description("Failed writes of the CoreDNS ConfigMap")
+			.register(meterRegistry);
+		rewriteApplyTimer = Timer
+			.builder("keights.rewrite.apply.latency")
+			.description("Time from a service event to its rewrite written in the Corefile")
+			.register(meterRegistry);
+		driftCheckTimer = Timer
+			.builder("keights.reconcile.drift.check")
+			.description("Duration of comparing the informer cache with the Corefile rewrites")
+			.register(meterRegistry);
+		driftMissing = Counter
+			.builder("keights.reconcile.drift")
+			.description("Drifted rewrites found by the periodic reconciler")
+			.tag("kind", "missing")
+			.register(meterRegistry);
+		driftStale = Counter
+			.builder("keights.reconcile.drift")
+			.description("Drifted rewrites found by the periodic reconciler")
+			.tag("kind", "stale")
+			.register(meterRegistry);
+	}
+
+	// ------------------------------
+
+	public void informerEvent(String resource, EEventType event) {
+		informerEvents
+			.computeIfAbsent(resource + "/" + event, k -> Counter
+				.builder("keights.informer.events")
+				.description("Events received from the informers")
+				.tag("resource", resource)
+				.tag("type", event.name())
+				.register(meterRegistry))
+			.increment();
+	}
+
+	public void corefile(String target, String corefile) {
+		if (corefile != null && corefileBytes.containsKey(target)) {
+			long lines = 1;
+			for (int i = 0; i < corefile.length(); i++) {
+				if (corefile.charAt(i) == '\n') {
+					lines++;
+				}
+			}
+			corefileBytes.get(target).set(corefile.length());
+			corefileLines.get(target).set(lines);
+		}
+	}
+
+	public void writeConflict() {
+		writeConflicts.increment();
+	}
+
+	public void writeFailure() {
+		writeFailures.increment();
+	}
+
+	public void drift(RewriteDrift drift) {
+		driftMissing.increment(drift.getMissing());
+		driftStale.increment(drift.getStale());
+	}
+
+	public void applied(List<RewriteRequest> requests) {
+		final var now = System.nanoTime();
+		for (final var request : requests) {
+			rewriteApplyTimer.record(now - request.getReceivedNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+}
@@ -1,24 +1,47 @@
 package org.devocative.keights.service;
 
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.extended.controller.DefaultController;
+import io.kubernetes.client.extended.controller.reconciler.Reconciler;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.extended.workqueue.DefaultRateLimitingQueue;
+import io.kubernetes.client.extended.workqueue.ratelimiter.ItemExponentialFailureRateLimiter;
+import io.kubernetes.client.extended.workqueue.ratelimiter.RateLimiter;
 import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.informer.SharedIndexInformer;
 import io.kubernetes.client.informer.SharedInformerFactory;
-import io.kubernetes.client.openapi.ApiException;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.apis.DiscoveryV1Api;
 import io.kubernetes.client.openapi.models.V1ConfigMap;
 import io.kubernetes.client.openapi.models.V1ConfigMapList;
+import io.kubernetes.client.openapi.models.V1EndpointSlice;
+import io.kubernetes.client.openapi.models.V1ListMeta;
 import io.kubernetes.client.openapi.models.V1Service;
 import io.kubernetes.client.openapi.models.V1ServiceList;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.devocative.keights.KeightsException;
 import org.devocative.keights.config.CoreDNSProperties;
-import org.devocative.keights.iservice.ICoreDNSService;
+import org.devocative.keights.dto.RewriteDiff;
+import org.devocative.keights.dto.RewriteRequest;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
 
 import static org.devocative.keights.dto.EEventType.*;
 
@@ -26,13 +49,41 @@ import static org.devocative.keights.dto.EEventType.*;
 @RequiredArgsConstructor
 @Service
 public class KeightsWatchService {
+	private static final String CONFIG_MAP = "configmap";
+	private static final String SERVICE = "service";
+	private static final String ENDPOINT_SLICE = "endpointslice";
+	private static final int DIFF_SAMPLE_SIZE = 10;
+
 	private final CoreV1Api coreV1Api;
 	private final CoreDNSProperties properties;
-	private final ICoreDNSService coreDNSService;
+	private final CoreDNSTargets targets;
+	private final ConfigMapWriter configMapWriter;
+	private final KeightsMetrics metrics;
 	private final TaskScheduler taskScheduler;
+	private final MeterRegistry meterRegistry;
+	private final LeaderElectionService leaderElection;
+	private final ServiceCache serviceCache;
+	private final DnsRecords dnsRecords;
+	private final ServiceEndpoints serviceEndpoints;
+
+	private final List<SharedInformerFactory> informerFactories = new ArrayList<>();
+	private final Map<String, SharedIndexInformer<V1Service>> serviceInformers = new LinkedHashMap<>();
+	private final List<SharedIndexInformer<V1EndpointSlice>> endpointSliceInformers = new ArrayList<>();
+	private final List<DefaultController> controllers = new ArrayList<>();
+	private final List<SharedIndexInformer<V1ConfigMap>> configMapInformers = new ArrayList<>();
+	private final Map<String, ConfigMapReconciler> configMapReconcilers = new LinkedHashMap<>();
+	private ScheduledFuture<?> syncCheck;
+	private DefaultController serviceController;
 
-	private final AtomicBoolean hasTask = new AtomicBoolean(false);
-	private V1ConfigMap coreDNSV1ConfigMap;
+	private volatile boolean synced = false;
+	private volatile boolean reconciled = false;
+	private volatile boolean fullReconcile = true;
+	private FlushDebouncer flushDebouncer;
+	private RateLimiter<String> flushRetry;
+
+	private ServiceSnapshot serviceSnapshot;
+	private Map<String, String> seenVersions = Map.of();
+	private Map<String, String> savedVersions = Map.of();
 
 	// ------------------------------
 
@@ -40,143 +91,479 @@ public class KeightsWatchService {
 	public void init() {
 		log.info("*** KeightsWatchService.INIT: {}", properties.toString());
 
-		final var informerFactory = new SharedInformerFactory();
-
-		final var v1ConfigMapSII = informerFactory.sharedIndexInformerFor(params -> {
-			log.debug("CoreDNSConfigMap, SharedIndexInformerFor.CallGeneratorParams: " +
-					"resourceVersion=[{}], timeoutSeconds=[{}], watch=[{}]",
-				params.resourceVersion, params.timeoutSeconds, params.watch);
-
-			return coreV1Api.listNamespacedConfigMapCall(
-				properties.getConfigMapNamespace(),
-				null,
-				null,
-				null,
-				"metadata.name=" + properties.getConfigMap(),
-				null,
-				null,
-				params.resourceVersion,
-				null,
-				params.timeoutSeconds,
-				params.watch,
-				null);
-		}, V1ConfigMap.class, V1ConfigMapList.class);
-		v1ConfigMapSII.addEventHandler(new ResourceEventHandler<>() {
-			@Override
-			public void onAdd(V1ConfigMap obj) {
-				final var coreDNSConfig = obj
-					.getData()
-					.get(properties.getConfigMapKey());
-				coreDNSV1ConfigMap = obj;
-				coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+		flushDebouncer = new FlushDebouncer(
+			taskScheduler,
+			properties.getRewriteQuietPeriod(),
+			properties.getRewriteTaskDelay(),
+			meterRegistry,
+			this::processRequests);
+
+		final var controller = properties.getController();
+		flushRetry = new ItemExponentialFailureRateLimiter<>(controller.getRetryBaseDelay(), controller.getRetryMaxDelay());
+
+		// One controller for all the targets, a request is dispatched by the ConfigMap key of its target
+		final var configMapController = createController(CONFIG_MAP,
+			request -> configMapReconcilers.get(request.getNamespace() + "/" + request.getName()).reconcile(request), 1);
+		final ResourceEventHandler<V1ConfigMap> configMapEventHandler = createEventHandler(CONFIG_MAP, configMapController);
+		for (final var target : targets.list()) {
+			final var targetProperties = target.getProperties();
+
+			// A factory holds one informer per type, so each ConfigMap has its own
+			final var configMapInformer = createInformerFactory().sharedIndexInformerFor(params -> {
+				log.debug("CoreDNSConfigMap, SharedIndexInformerFor.CallGeneratorParams: target=[{}] " +
+						"resourceVersion=[{}], timeoutSeconds=[{}], watch=[{}]",
+					target.getName(), params.resourceVersion, params.timeoutSeconds, params.watch);
+
+				return coreV1Api.listNamespacedConfigMapCall(
+					targetProperties.getConfigMapNamespace(),
+					null,
+					null,
+					null,
+					"metadata.name=" + targetProperties.getConfigMap(),
+					null,
+					null,
+					params.resourceVersion,
+					null,
+					null,
+					params.timeoutSeconds,
+					params.watch,
+					null);
+			}, V1ConfigMap.class, V1ConfigMapList.class);
+			configMapInformer.addEventHandler(configMapEventHandler);
+			configMapInformers.add(configMapInformer);
+			configMapReconcilers.put(target.getConfigMapKey(),
+				new ConfigMapReconciler(target, metrics, configMapInformer.getIndexer(), this::resetTask));
+		}
+
+		final var serviceWatch = properties.getServiceWatch();
+		final List<String> namespaces = serviceWatch.getNamespaces().isEmpty() ?
+			Collections.singletonList(null) :
+			serviceWatch.getNamespaces();
+		// The slices can not be selected by the annotation of their service, so an unscoped watch gets all of them
+		if (serviceEndpoints.isEnabled() && serviceWatch.getLabelSelector() == null && serviceWatch.getNamespaces().isEmpty()) {
+			throw new KeightsException("Endpoints Mode Needs A Scope: set keights.coredns.service-watch.label-selector " +
+				"or keights.coredns.service-watch.namespaces, otherwise every EndpointSlice of the cluster is watched");
+		}
+		final var workers = controller.getWorkers() > 0 ? controller.getWorkers() : Runtime.getRuntime().availableProcessors();
+		final var serviceReconciler = new ServiceReconciler(properties, targets, serviceCache, serviceEndpoints, dnsRecords, this::resetTask);
+		serviceController = createController(SERVICE, serviceReconciler, workers);
+		final ResourceEventHandler<V1Service> serviceEventHandler = createEventHandler(SERVICE, serviceController);
+		final var endpointSliceEventHandler = createEndpointSliceHandler();
+		final var restored = readSnapshot(namespaces);
+		for (final var namespace : namespaces) {
+			final var factory = createInformerFactory();
+
+			final var listerWatcher = new ServiceListerWatcher(
+				coreV1Api,
+				namespace,
+				serviceWatch.getLabelSelector(),
+				serviceWatch.isTrimCache(),
+				List.of(properties.getRewriteConfig().getAnnotation()));
+
+			final var section = ServiceSnapshot.sectionOf(namespace);
+			if (restored.containsKey(section)) {
+				listerWatcher.restore(restored.get(section));
+			}
+
+			final var serviceInformer = factory.sharedIndexInformerFor(listerWatcher, V1Service.class, 0);
+			serviceInformer.addEventHandler(serviceEventHandler);
+			serviceInformers.put(section, serviceInformer);
+			serviceCache.register(serviceInformer.getIndexer());
+
+			// Same scope as the services, a slice event is queued as the key of its service
+			if (serviceEndpoints.isEnabled()) {
+				final var endpointSliceInformer = factory.sharedIndexInformerFor(
+					new EndpointSliceListerWatcher(new DiscoveryV1Api(coreV1Api.getApiClient()), namespace, serviceWatch.getLabelSelector()),
+					V1EndpointSlice.class,
+					0);
+				serviceEndpoints.register(endpointSliceInformer.getIndexer());
+				endpointSliceInformer.addEventHandler(endpointSliceEventHandler);
+				endpointSliceInformers.add(endpointSliceInformer);
 			}
+		}
+
+		if (!properties.isStartWatch()) {
+			log.warn("Watch Not Started: keights.coredns.start-watch=false");
+			return;
+		}
+
+		for (final var ctrl : controllers) {
+			Thread.ofVirtual().name("keights-" + ctrl.getName()).start(ctrl::run);
+		}
+		informerFactories.forEach(SharedInformerFactory::startAllRegisteredInformers);
+		syncCheck = taskScheduler.scheduleWithFixedDelay(this::checkSynced, Duration.ofMillis(100));
+
+		if (!properties.getReconcileInterval().isZero()) {
+			taskScheduler.scheduleWithFixedDelay(this::checkDrift, properties.getReconcileInterval());
+		}
+
+		if (serviceSnapshot != null) {
+			taskScheduler.scheduleWithFixedDelay(() -> saveSnapshot(true), properties.getSnapshot().getInterval());
+		}
+
+		leaderElection.onStartLeading(() -> {
+			fullReconcile = true;
+			resetTask();
+		});
+	}
 
+	@PreDestroy
+	public void destroy() {
+		if (serviceSnapshot != null) {
+			saveSnapshot(false);
+		}
+		controllers.forEach(DefaultController::shutdown);
+		informerFactories.forEach(SharedInformerFactory::stopAllRegisteredInformers);
+	}
+
+	/**
+	 * Ready after the informers are synced and, on the leader, the initial reconcile is written
+	 */
+	public boolean isReady() {
+		return synced && (reconciled || !leaderElection.isLeader());
+	}
+
+	// ------------------------------
+
+	// Reflectors and handlers block on the watch streams, one virtual thread each
+	private SharedInformerFactory createInformerFactory() {
+		final var factory = new SharedInformerFactory(Executors.newVirtualThreadPerTaskExecutor());
+		informerFactories.add(factory);
+		return factory;
+	}
+
+	/**
+	 * A controller with its own work queue: a key is processed by one worker at a time, and a failed key is retried
+	 * with a per-key exponential backoff, without blocking the other keys
+	 */
+	private DefaultController createController(String name, Reconciler reconciler, int workers) {
+		final var config = properties.getController();
+		final var threadFactory = Thread.ofVirtual().name("keights-" + name + "-", 0).factory();
+
+		final var controller = new DefaultController(name, reconciler, new DefaultRateLimitingQueue<>(
+			Executors.newSingleThreadExecutor(threadFactory),
+			new ItemExponentialFailureRateLimiter<>(config.getRetryBaseDelay(), config.getRetryMaxDelay())));
+		controller.setWorkerCount(workers);
+		controller.setWorkerThreadPool(Executors.newScheduledThreadPool(workers, threadFactory));
+		controllers.add(controller);
+		log.info("Controller Created: name=[{}] workers=[{}]", name, workers);
+		return controller;
+	}
+
+	// Only the key is queued, the reconciler reads the latest state from the informer cache
+	private <T extends KubernetesObject> ResourceEventHandler<T> createEventHandler(String resource, DefaultController controller) {
+		return new ResourceEventHandler<>() {
 			@Override
-			public void onUpdate(V1ConfigMap oldObj, V1ConfigMap newObj) {
-				final var coreDNSConfig = newObj
-					.getData()
-					.get(properties.getConfigMapKey());
-				coreDNSV1ConfigMap = newObj;
-				coreDNSService.handleCoreDNSConfigMap(Updated, coreDNSConfig);
+			public void onAdd(T obj) {
+				metrics.informerEvent(resource, Added);
+				enqueue(obj);
 			}
 
 			@Override
-			public void onDelete(V1ConfigMap obj, boolean deletedFinalStateUnknown) {
-				log.error("CoreDNS ConfigMap REMOVED!!!");
+			public void onUpdate(T oldObj, T newObj) {
+				metrics.informerEvent(resource, Updated);
+				enqueue(newObj);
 			}
-		});
 
-		final var v1ServicesSII = informerFactory.sharedIndexInformerFor(params -> {
-			log.debug("Services, SharedIndexInformerFor.CallGeneratorParams: " +
-					"resourceVersion=[{}], timeoutSeconds=[{}], watch=[{}]",
-				params.resourceVersion, params.timeoutSeconds, params.watch);
-
-			return coreV1Api.listServiceForAllNamespacesCall(
-				null,
-				null,
-				null,
-				null,
-				null,
-				null,
-				params.resourceVersion,
-				null,
-				params.timeoutSeconds,
-				params.watch,
-				null);
-
-		}, V1Service.class, V1ServiceList.class);
-		v1ServicesSII.addEventHandler(new ResourceEventHandler<>() {
 			@Override
-			public void onAdd(V1Service obj) {
+			public void onDelete(T obj, boolean deletedFinalStateUnknown) {
+				metrics.informerEvent(resource, Deleted);
+				enqueue(obj);
+			}
+
+			private void enqueue(T obj) {
 				final var md = obj.getMetadata();
-				final var rqAdded = coreDNSService.handleService(Added, md.getName(), md.getNamespace(), md.getAnnotations());
-				if (rqAdded) {
-					resetTask();
+				controller.getWorkQueue().add(new Request(md.getNamespace(), md.getName()));
+			}
+		};
+	}
+
+	/**
+	 * Only a slice changing the readiness of an annotated service is queued, i.e. one gaining its first ready endpoint
+	 * or losing its last one, so the endpoint churn of ready services costs no reconcile
+	 */
+	private ResourceEventHandler<V1EndpointSlice> createEndpointSliceHandler() {
+		return new ResourceEventHandler<>() {
+			@Override
+			public void onAdd(V1EndpointSlice obj) {
+				metrics.informerEvent(ENDPOINT_SLICE, Added);
+				if (ServiceEndpoints.hasReadyEndpoint(obj)) {
+					enqueue(obj);
 				}
 			}
 
 			@Override
-			public void onUpdate(V1Service oldObj, V1Service newObj) {
-				final var md = newObj.getMetadata();
-				final var rqAdded = coreDNSService.handleService(Updated, md.getName(), md.getNamespace(), md.getAnnotations());
-				if (rqAdded) {
-					resetTask();
+			public void onUpdate(V1EndpointSlice oldObj, V1EndpointSlice newObj) {
+				metrics.informerEvent(ENDPOINT_SLICE, Updated);
+				if (ServiceEndpoints.hasReadyEndpoint(oldObj) != ServiceEndpoints.hasReadyEndpoint(newObj)) {
+					enqueue(newObj);
 				}
 			}
 
 			@Override
-			public void onDelete(V1Service obj, boolean deletedFinalStateUnknown) {
-				final var md = obj.getMetadata();
-				final var rqAdded = coreDNSService.handleService(Deleted, md.getName(), md.getNamespace(), md.getAnnotations());
-				if (rqAdded) {
-					resetTask();
+			public void onDelete(V1EndpointSlice obj, boolean deletedFinalStateUnknown) {
+				metrics.informerEvent(ENDPOINT_SLICE, Deleted);
+				if (ServiceEndpoints.hasReadyEndpoint(obj)) {
+					enqueue(obj);
 				}
 			}
-		});
 
-		informerFactory.startAllRegisteredInformers();
+			// Before the sync, all the annotated services are queued at once
+			private void enqueue(V1EndpointSlice obj) {
+				final var key = ServiceEndpoints.getServiceKey(obj);
+				if (synced && key != null && isAnnotated(serviceCache.get(key))) {
+					serviceController.getWorkQueue().add(new Request(obj.getMetadata().getNamespace(), key.substring(key.indexOf('/') + 1)));
+				}
+			}
+		};
 	}
 
-	// ------------------------------
+	private boolean isAnnotated(V1Service service) {
+		final var annotations = service != null ? service.getMetadata().getAnnotations() : null;
+		return annotations != null && annotations.containsKey(properties.getRewriteConfig().getAnnotation());
+	}
 
-	private V1ConfigMap getCoreDNSV1ConfigMap() {
+	private Map<String, V1ServiceList> readSnapshot(List<String> namespaces) {
+		final var snapshot = properties.getSnapshot();
+		if (!snapshot.isEnabled()) {
+			return Map.of();
+		}
+
+		final var serviceWatch = properties.getServiceWatch();
+		final var fingerprint = String.join("|",
+			properties.getRewriteConfig().getAnnotation(),
+			String.valueOf(serviceWatch.getLabelSelector()),
+			String.valueOf(namespaces));
+		serviceSnapshot = new ServiceSnapshot(Paths.get(snapshot.getPath()), fingerprint, properties.getRewriteConfig().getAnnotation());
+		return serviceSnapshot.read();
+	}
+
+	/**
+	 * Each section is saved with the resourceVersion of its informer, read before and after listing its cache. With
+	 * requireQuiet, the versions must also be the same as the previous call, so the informer has processed them.
+	 */
+	private synchronized void saveSnapshot(boolean requireQuiet) {
+		if (!synced) {
+			return;
+		}
+
+		final var versions = new LinkedHashMap<String, String>();
+		final var sections = new LinkedHashMap<String, V1ServiceList>();
+		for (final var entry : serviceInformers.entrySet()) {
+			final var informer = entry.getValue();
+			final var resourceVersion = informer.lastSyncResourceVersion();
+			final var items = informer.getIndexer().list();
+			if (resourceVersion == null || !resourceVersion.equals(informer.lastSyncResourceVersion())) {
+				log.debug("Snapshot Skipped, informer is busy: section=[{}]", entry.getKey());
+				return;
+			}
+
+			versions.put(entry.getKey(), resourceVersion);
+			sections.put(entry.getKey(), new V1ServiceList()
+				.metadata(new V1ListMeta().resourceVersion(resourceVersion))
+				.items(items));
+		}
+
+		final var quiet = versions.equals(seenVersions);
+		seenVersions = versions;
+		if (versions.equals(savedVersions) || (requireQuiet && !quiet)) {
+			return;
+		}
+
+		try {
+			serviceSnapshot.write(sections);
+			savedVersions = versions;
+			log.info("Snapshot Saved: path=[{}] versions={}", properties.getSnapshot().getPath(), versions);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Snapshot Save Failed: path=[{}]", properties.getSnapshot().getPath(), e);
+		}
+	}
+
+	private void checkSynced() {
+		if (synced) {
+			return;
+		}
+
+		final var allSynced = configMapInformers.stream().allMatch(SharedIndexInformer::hasSynced) &&
+			serviceInformers.values().stream().allMatch(SharedIndexInformer::hasSynced) &&
+			endpointSliceInformers.stream().allMatch(SharedIndexInformer::hasSynced);
+		if (allSynced) {
+			log.info("Informers Synced: services=[{}] endpointSlices=[{}]",
+				serviceInformers.values().stream().mapToInt(i -> i.getIndexer().list().size()).sum(),
+				endpointSliceInformers.stream().mapToInt(i -> i.getIndexer().list().size()).sum());
+			synced = true;
+			syncCheck.cancel(false);
+
+			// The services handled before the slices were synced are checked again, now with their endpoints
+			if (serviceEndpoints.isEnabled()) {
+				serviceEndpoints.synced();
+				for (final var service : serviceCache.list()) {
+					if (isAnnotated(service)) {
+						serviceController.getWorkQueue().add(new Request(service.getMetadata().getNamespace(), service.getMetadata().getName()));
+					}
+				}
+			}
+			resetTask();
+		}
+	}
+
+	/**
+	 * Level-triggered check, only on an idle leader: if the Corefile drifted from the informer cache, the next flush
+	 * is a full reconcile. Nothing is sent to the API server when there is no drift.
+	 */
+	private void checkDrift() {
+		if (properties.isDryRun() || !synced || !reconciled || !leaderElection.isLeader() ||
+			!flushDebouncer.isIdle() || targets.getRequestsSize() > 0) {
+			return;
+		}
+
+		try {
+			final var desired = listDesiredRequests();
+			var drifted = false;
+			for (final var target : targets.list()) {
+				final var drift = metrics.getDriftCheckTimer().record(() -> target.getCoreDNSService().detectDrift(desired));
+				if (!drift.isEmpty()) {
+					log.warn("Drift Detected: target=[{}] {}", target.getName(), drift);
+					metrics.drift(drift);
+					drifted = true;
+				}
+			}
+
+			if (drifted) {
+				fullReconcile = true;
+				resetTask();
+			}
+		} catch (RuntimeException e) {
+			log.error("checkDrift", e);
+		}
+	}
+
+	/**
+	 * One Added request per annotated service in the informer caches, except the ones with no ready endpoint
+	 */
+	private List<RewriteRequest> listDesiredRequests() {
+		final var annotation = properties.getRewriteConfig().getAnnotation();
+		final var result = new ArrayList<RewriteRequest>();
+		for (final var service : serviceCache.list()) {
+			final var md = service.getMetadata();
+			final var domain = md.getAnnotations() != null ? md.getAnnotations().get(annotation) : null;
+			if (domain != null && serviceEndpoints.isReady(service)) {
+				result.add(new RewriteRequest()
+					.setEvent(Added)
+					.setDomainName(domain)
+					.setServiceName(md.getName())
+					.setServiceNamespace(md.getNamespace()));
+			}
+		}
+		return result;
+	}
+
+	private V1ConfigMap getCoreDNSV1ConfigMap(CoreDNSTarget target) {
+		final var coreDNSV1ConfigMap = configMapReconcilers.get(target.getConfigMapKey()).getConfigMap();
 		if (coreDNSV1ConfigMap == null) {
-			throw new KeightsException("CoreDNS ConfigMap Not Found: name=[%s] namespace=[%s]",
-				properties.getConfigMap(), properties.getConfigMapNamespace());
+			throw new KeightsException("CoreDNS ConfigMap Not Found: target=[%s] configMap=[%s]",
+				target.getName(), target.getConfigMapKey());
 		}
 		return coreDNSV1ConfigMap;
 	}
 
+	/**
+	 * The targets are flushed in parallel, each writing its own ConfigMap. The reconcile is done when all of them are
+	 * written; a failed target keeps its requests and is retried with its own backoff.
+	 */
 	private void processRequests() {
-		hasTask.set(false);
+		if (!leaderElection.isLeader()) {
+			log.debug("processRequests: not the leader, requests are kept: size=[{}]", targets.getRequestsSize());
+			return;
+		}
 
-		final var coreDNSConfig = getCoreDNSV1ConfigMap().getData().get(properties.getConfigMapKey());
-		final var optionalConfig = coreDNSService.processRequests(coreDNSConfig);
-		optionalConfig.ifPresent(config -> {
-			getCoreDNSV1ConfigMap().getData().put(properties.getConfigMapKey(), config);
-			replaceCoreDNSV1ConfigMap();
-		});
+		if (!synced) {
+			log.debug("processRequests: informers not synced yet");
+			return;
+		}
+
+		final var full = fullReconcile;
+		if (full && !targets.isInited()) {
+			log.warn("processRequests: CoreDNS ConfigMaps not received yet");
+			return;
+		}
+
+		if (properties.isDryRun()) {
+			for (final var target : targets.list()) {
+				final var coreDNSService = target.getCoreDNSService();
+				final var plan = metrics.getProcessRequestsTimer().record(coreDNSService::planRequests);
+				log.info("Dry Run: target=[{}] requests=[{}] {}", target.getName(), coreDNSService.getRequestsSize(),
+					RewriteDiff.of(coreDNSService.getRewrites(), plan, DIFF_SAMPLE_SIZE));
+			}
+			reconciled(full);
+			return;
+		}
+
+		final var results = new LinkedHashMap<String, Future<Boolean>>();
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (final var target : targets.list()) {
+				results.put(target.getName(), executor.submit(() -> flush(target, full)));
+			}
+		}
+
+		var done = true;
+		for (final var entry : results.entrySet()) {
+			final var result = entry.getValue();
+			if (result.state() == Future.State.FAILED) {
+				log.error("processRequests: target=[{}]", entry.getKey(), result.exceptionNow());
+				done = false;
+			} else {
+				done &= result.resultNow();
+			}
+		}
+
+		if (done) {
+			reconciled(full);
+		}
 	}
 
-	private void replaceCoreDNSV1ConfigMap() {
+	private boolean flush(CoreDNSTarget target, boolean full) {
+		final var coreDNSService = target.getCoreDNSService();
+		final var optionalConfig = metrics.getProcessRequestsTimer().record(() -> full ?
+			coreDNSService.reconcileRequests(this::listDesiredRequests) :
+			coreDNSService.processRequests());
+		if (optionalConfig.isEmpty()) {
+			return true;
+		}
+
 		try {
-			coreV1Api.replaceNamespacedConfigMap(
-				properties.getConfigMap(),
-				properties.getConfigMapNamespace(),
-				getCoreDNSV1ConfigMap(),
-				null,
-				null,
-				null);
-		} catch (ApiException e) {
-			log.error("writeCoreDNSV1ConfigMap", e);
-			throw new KeightsException(e);
+			// The version the pending data is rendered from, read first: a ConfigMap parsed in between fails the patch
+			final var resourceVersion = coreDNSService.getResourceVersion();
+			final var written = configMapWriter.write(
+				getCoreDNSV1ConfigMap(target),
+				resourceVersion,
+				coreDNSService.getPendingData(),
+				fresh -> coreDNSService
+					.rebaseRequests(fresh.getData(), fresh.getMetadata().getResourceVersion())
+					.map(main -> coreDNSService.getPendingData()));
+			configMapReconcilers.get(target.getConfigMapKey()).written(written);
+			metrics.corefile(target.getName(), written.getData().get(target.getProperties().getConfigMapKey()));
+			metrics.applied(coreDNSService.commitRequests(written.getMetadata().getResourceVersion()));
+			flushRetry.forget(target.getName());
+			return true;
+		} catch (RuntimeException e) {
+			final var delay = flushRetry.when(target.getName());
+			log.error("processRequests: write failed, requests are kept for a retry: target=[{}] after=[{}] retries=[{}]",
+				target.getName(), delay, flushRetry.numRequeues(target.getName()), e);
+			coreDNSService.rollbackRequests();
+			taskScheduler.schedule(this::resetTask, Instant.now().plus(delay));
+			return false;
 		}
 	}
 
-	private synchronized void resetTask() {
-		if (!hasTask.get()) {
-			taskScheduler.schedule(this::processRequests, Instant.now().plus(properties.getRewriteTaskDelay()));
-			hasTask.set(true);
+	private void reconciled(boolean full) {
+		if (full) {
+			fullReconcile = false;
+			reconciled = true;
 		}
 	}
+
+	private void resetTask() {
+		flushDebouncer.signal();
+	}
 }
@@ -0,0 +1,139 @@
+package org.devocative.keights.service;
+
+import io.kubernetes.client.extended.leaderelection.LeaderElectionConfig;
+import io.kubernetes.client.extended.leaderelection.LeaderElector;
+import io.kubernetes.client.extended.leaderelection.Lock;
+import io.kubernetes.client.extended.leaderelection.resourcelock.LeaseLock;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lease based leader election. When disabled, this instance is always the leader.
+ */
+@Slf4j
+@Service
+public class LeaderElectionService {
+	private final CoreDNSProperties.LeaderElection config;
+	private final Lock lock;
+
+	private final AtomicBoolean leader = new AtomicBoolean(false);
+	private final List<Runnable> startLeadingListeners = new CopyOnWriteArrayList<>();
+
+	private volatile boolean running = false;
+	private volatile LeaderElector leaderElector;
+	private Thread thread;
+
+	// ------------------------------
+
+	@Autowired
+	public LeaderElectionService(CoreDNSProperties properties, CoreV1Api coreV1Api) {
+		this(properties.getLeaderElection(), createLeaseLock(properties.getLeaderElection(), coreV1Api));
+	}
+
+	public LeaderElectionService(CoreDNSProperties.LeaderElection config, Lock lock) {
+		this.config = config;
+		this.lock = lock;
+	}
+
+	// ------------------------------
+
+	@PostConstruct
+	public void start() {
+		if (!config.isEnabled()) {
+			leader.set(true);
+			return;
+		}
+
+		running = true;
+		thread = Thread.ofVirtual().name("keights-leader-election").start(this::campaign);
+	}
+
+	@PreDestroy
+	public void stop() {
+		running = false;
+		final var elector = leaderElector;
+		if (elector != null) {
+			elector.close();
+		}
+		if (thread != null) {
+			thread.interrupt();
+		}
+		if (config.isEnabled()) {
+			leader.set(false);
+		}
+	}
+
+	public boolean isLeader() {
+		return leader.get();
+	}
+
+	/**
+	 * The listener is called on every leadership acquisition, and right away if this instance is already the leader
+	 */
+	public void onStartLeading(Runnable listener) {
+		startLeadingListeners.add(listener);
+		if (leader.get()) {
+			listener.run();
+		}
+	}
+
+	// ------------------------------
+
+	private void campaign() {
+		log.info("Leader Election: lock=[{}]", lock.describe());
+
+		while (running) {
+			try (final var elector = new LeaderElector(new LeaderElectionConfig(
+				lock,
+				config.getLeaseDuration(),
+				config.getRenewDeadline(),
+				config.getRetryPeriod()))) {
+				leaderElector = elector;
+				elector.run(this::startLeading, this::stopLeading, newLeader -> log.info("Leader Election: leader=[{}]", newLeader));
+			} catch (Exception e) {
+				log.error("Leader Election", e);
+			} finally {
+				stopLeading();
+			}
+		}
+	}
+
+	private void startLeading() {
+		if (running && leader.compareAndSet(false, true)) {
+			log.info("Leader Election: Start Leading, identity=[{}]", lock.identity());
+			startLeadingListeners.forEach(Runnable::run);
+		}
+	}
+
+	private void stopLeading() {
+		if (leader.compareAndSet(true, false)) {
+			log.warn("Leader Election: Stop Leading, identity=[{}]", lock.identity());
+		}
+	}
+
+	private static Lock createLeaseLock(CoreDNSProperties.LeaderElection config, CoreV1Api coreV1Api) {
+		if (!config.isEnabled()) {
+			return null;
+		}
+
+		var identity = config.getIdentity();
+		if (identity == null) {
+			identity = System.getenv("HOSTNAME");
+		}
+		if (identity == null) {
+			identity = UUID.randomUUID().toString();
+		}
+
+		return new LeaseLock(config.getLeaseNamespace(), config.getLeaseName(), identity, coreV1Api.getApiClient());
+	}
+}
@@ -0,0 +1,54 @@
+package org.devocative.keights.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Allows up to a number of log lines per period, the dropped ones are counted and reported by the next allowed line.
+ * Lock-free: the window is moved by a CAS, so a few lines more or less may pass while a window is reset.
+ */
+public class LogRateLimiter {
+	private final int permits;
+	private final long periodNanos;
+	private final LongSupplier clock;
+
+	private final AtomicLong windowStart;
+	private final AtomicInteger used = new AtomicInteger();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	// ------------------------------
+
+	public LogRateLimiter(int permits, Duration period) {
+		this(permits, period, System::nanoTime);
+	}
+
+	public LogRateLimiter(int permits, Duration period, LongSupplier clock) {
+		this.permits = permits;
+		this.periodNanos = period.toNanos();
+		this.clock = clock;
+		this.windowStart = new AtomicLong(clock.getAsLong());
+	}
+
+	// ------------------------------
+
+	/**
+	 * Returns -1 if the line must be dropped, otherwise the number of lines dropped since the last allowed one
+	 */
+	public long acquire() {
+		final var now = clock.getAsLong();
+		final var start = windowStart.get();
+		if (now - start >= periodNanos && windowStart.compareAndSet(start, now)) {
+			used.set(0);
+		}
+
+		// Checked first, so the counter stops growing once the permits are used
+		if (used.get() >= permits || used.incrementAndGet() > permits) {
+			suppressed.incrementAndGet();
+			return -1;
+		}
+
+		return suppressed.getAndSet(0);
+	}
+}
@@ -0,0 +1,84 @@
+package org.devocative.keights.service;
+
+import org.devocative.keights.dto.RewriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pending requests keyed by service (namespace/name), a newer request replaces the older one of the same service.
+ * The requests carry the desired state of the service, so only the latest one matters. A drain swaps in an empty
+ * map, hence the size is bounded by the number of distinct services and not by the number of events.
+ */
+public class PendingRequests {
+	private static final Comparator<RewriteRequest> RECEIVED_ORDER = Comparator.comparingLong(RewriteRequest::getReceivedNanos);
+
+	private final AtomicReference<ConcurrentHashMap<String, RewriteRequest>> pending =
+		new AtomicReference<>(new ConcurrentHashMap<>());
+
+	// ------------------------------
+
+	public void put(RewriteRequest request) {
+		final var key = request.getServiceKey();
+		var map = pending.get();
+		while (true) {
+			map.merge(key, request, PendingRequests::latest);
+
+			// Swapped by a drain in the meantime, may have been missed, so it is put in the new map too (which can
+			// also be swapped during the merge)
+			final var current = pending.get();
+			if (current == map) {
+				return;
+			}
+			map = current;
+		}
+	}
+
+	/**
+	 * Returns the compacted requests in the order they were received
+	 */
+	public List<RewriteRequest> drain() {
+		final var drained = pending.getAndSet(new ConcurrentHashMap<>());
+		final var result = new ArrayList<>(drained.values());
+		result.sort(RECEIVED_ORDER);
+		return result;
+	}
+
+	/**
+	 * The pending requests in the order they were received, without draining them
+	 */
+	public List<RewriteRequest> peek() {
+		final var result = new ArrayList<>(pending.get().values());
+		result.sort(RECEIVED_ORDER);
+		return result;
+	}
+
+	/**
+	 * Puts back the requests of a failed flush, unless a newer request of the same service is already pending
+	 */
+	public void restore(Collection<RewriteRequest> requests) {
+		requests.forEach(this::put);
+	}
+
+	public void clear() {
+		pending.set(new ConcurrentHashMap<>());
+	}
+
+	public int size() {
+		return pending.get().size();
+	}
+
+	public boolean isEmpty() {
+		return pending.get().isEmpty();
+	}
+
+	// ------------------------------
+
+	private static RewriteRequest latest(RewriteRequest current, RewriteRequest request) {
+		return request.getReceivedNanos() >= current.getReceivedNanos() ? request : current;
+	}
+}
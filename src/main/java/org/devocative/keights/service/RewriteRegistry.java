@@ -0,0 +1,263 @@
+package org.devocative.keights.service;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Bidirectional index of rewrites (domain -> FQDN, FQDN -> domains), both sides updated under one lock.
+ * Each domain also keeps the services (owners) claiming it; a rewrite is dropped when its last owner releases it.
+ * Rewrites read from the Corefile with no known owner are kept until a service takes over their FQDN.
+ * An order-independent hash of the rewrite set is kept up to date on every change, as a fast check only: equal
+ * hashes do not prove equal sets.
+ */
+public class RewriteRegistry {
+	private final Map<String, String> domainToFqdn = new LinkedHashMap<>();
+	private final Map<String, Set<String>> fqdnToDomains = new HashMap<>();
+
+	private final Map<String, LinkedHashMap<String, String>> domainClaims = new HashMap<>();
+	private final Map<String, Set<String>> ownerDomains = new HashMap<>();
+
+	private long hash = 0;
+
+	// ------------------------------
+
+	public synchronized String get(String domain) {
+		return domainToFqdn.get(domain);
+	}
+
+	public synchronized Set<String> getDomains(String fqdn) {
+		final var domains = fqdnToDomains.get(fqdn);
+		return domains != null ? Set.copyOf(domains) : Set.of();
+	}
+
+	public synchronized Set<String> getOwners(String domain) {
+		final var claims = domainClaims.get(domain);
+		return claims != null ? Set.copyOf(claims.keySet()) : Set.of();
+	}
+
+	public synchronized Set<String> getOwnedDomains(String owner) {
+		final var domains = ownerDomains.get(owner);
+		return domains != null ? Set.copyOf(domains) : Set.of();
+	}
+
+	public synchronized Set<String> getOwners() {
+		return Set.copyOf(ownerDomains.keySet());
+	}
+
+	public synchronized boolean contains(String domain, String fqdn) {
+		return fqdn != null && fqdn.equals(domainToFqdn.get(domain));
+	}
+
+	public synchronized int size() {
+		return domainToFqdn.size();
+	}
+
+	public synchronized long getHash() {
+		return hash;
+	}
+
+	/**
+	 * True if the rewrites are exactly the given ones
+	 */
+	public synchronized boolean contentEquals(Map<String, String> rewrites) {
+		return domainToFqdn.equals(rewrites);
+	}
+
+	public synchronized void put(String domain, String fqdn) {
+		final var old = domainToFqdn.put(domain, fqdn);
+		if (old != null) {
+			unlink(old, domain);
+			hash -= hash(domain, old);
+		}
+		hash += hash(domain, fqdn);
+		fqdnToDomains.computeIfAbsent(fqdn, k -> new LinkedHashSet<>()).add(domain);
+	}
+
+	public synchronized String remove(String domain) {
+		final var fqdn = domainToFqdn.remove(domain);
+		if (fqdn != null) {
+			unlink(fqdn, domain);
+			hash -= hash(domain, fqdn);
+		}
+		return fqdn;
+	}
+
+	/**
+	 * Sets the domains claimed by the owner to exactly the given ones: the owner's other claims are released, and
+	 * unowned rewrites to the same FQDN are replaced. Returns true if any rewrite was added, changed or removed.
+	 */
+	public synchronized boolean assign(String owner, String fqdn, Set<String> domains) {
+		final var rewrites = new LinkedHashMap<String, String>();
+		domains.forEach(domain -> rewrites.put(domain, fqdn));
+		return assign(owner, fqdn, rewrites);
+	}
+
+	/**
+	 * Same as above, each domain (rule key) with its own target, e.g. a suffix rule targets the namespace domain
+	 */
+	public synchronized boolean assign(String owner, String fqdn, Map<String, String> rewrites) {
+		final var domains = rewrites.keySet();
+		var changed = false;
+
+		final var owned = ownerDomains.get(owner);
+		if (owned != null) {
+			for (final var domain : List.copyOf(owned)) {
+				if (!domains.contains(domain)) {
+					changed |= release(owner, domain);
+				}
+			}
+		}
+
+		changed |= removeUnowned(fqdn, domains);
+
+		for (final var entry : rewrites.entrySet()) {
+			final var domain = entry.getKey();
+			final var target = entry.getValue();
+			final var claims = domainClaims.computeIfAbsent(domain, k -> new LinkedHashMap<>());
+			claims.remove(owner);
+			claims.put(owner, target);
+			ownerDomains.computeIfAbsent(owner, k -> new LinkedHashSet<>()).add(domain);
+
+			if (!target.equals(domainToFqdn.get(domain))) {
+				put(domain, target);
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Releases every claim of the owner and drops the unowned rewrites to its FQDN. A domain still claimed by
+	 * another owner is kept and, if it pointed to this owner, re-targeted to the latest remaining claim.
+	 */
+	public synchronized boolean unassign(String owner, String fqdn) {
+		var changed = false;
+
+		final var owned = ownerDomains.get(owner);
+		if (owned != null) {
+			for (final var domain : List.copyOf(owned)) {
+				changed |= release(owner, domain);
+			}
+		}
+
+		changed |= removeUnowned(fqdn, Set.of());
+		return changed;
+	}
+
+	/**
+	 * Replaces the rewrites with the ones read from the Corefile, the claims of the owners are kept
+	 */
+	public synchronized void reset(Map<String, String> rewrites) {
+		domainToFqdn.clear();
+		fqdnToDomains.clear();
+		hash = 0;
+		rewrites.forEach(this::put);
+	}
+
+	/**
+	 * A deep copy with the same rewrites and claims, e.g. to apply requests without changing this one
+	 */
+	public synchronized RewriteRegistry copy() {
+		final var copy = new RewriteRegistry();
+		copy.domainToFqdn.putAll(domainToFqdn);
+		fqdnToDomains.forEach((fqdn, domains) -> copy.fqdnToDomains.put(fqdn, new LinkedHashSet<>(domains)));
+		domainClaims.forEach((domain, claims) -> copy.domainClaims.put(domain, new LinkedHashMap<>(claims)));
+		ownerDomains.forEach((owner, domains) -> copy.ownerDomains.put(owner, new LinkedHashSet<>(domains)));
+		copy.hash = hash;
+		return copy;
+	}
+
+	public synchronized Map<String, String> snapshot() {
+		return new LinkedHashMap<>(domainToFqdn);
+	}
+
+	public synchronized void forEach(BiConsumer<String, String> consumer) {
+		domainToFqdn.forEach(consumer);
+	}
+
+	public static long hash(Map<String, String> rewrites) {
+		long result = 0;
+		for (final var entry : rewrites.entrySet()) {
+			result += hash(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	// ------------------------------
+
+	private static long hash(String domain, String fqdn) {
+		// MurmurHash3 finalizer, spreads the 64 bits before they are summed
+		var h = hash64(domain) * 0x9E3779B97F4A7C15L + hash64(fqdn);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	// FNV-1a over the chars, String.hashCode() has only 32 bits and trivial collisions, e.g. "ab" and "bC"
+	private static long hash64(String value) {
+		var h = 0xCBF29CE484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001B3L;
+		}
+		return h;
+	}
+
+	private boolean release(String owner, String domain) {
+		final var domains = ownerDomains.get(owner);
+		if (domains != null) {
+			domains.remove(domain);
+			if (domains.isEmpty()) {
+				ownerDomains.remove(owner);
+			}
+		}
+
+		final var claims = domainClaims.get(domain);
+		if (claims == null || claims.remove(owner) == null) {
+			return false;
+		}
+
+		if (claims.isEmpty()) {
+			domainClaims.remove(domain);
+			return remove(domain) != null;
+		}
+
+		String latest = null;
+		for (final var fqdn : claims.values()) {
+			latest = fqdn;
+		}
+		if (!latest.equals(domainToFqdn.get(domain))) {
+			put(domain, latest);
+			return true;
+		}
+		return false;
+	}
+
+	private boolean removeUnowned(String fqdn, Set<String> except) {
+		var changed = false;
+		final var domains = fqdnToDomains.get(fqdn);
+		if (domains != null) {
+			for (final var domain : List.copyOf(domains)) {
+				if (!except.contains(domain) && !domainClaims.containsKey(domain)) {
+					remove(domain);
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	private void unlink(String fqdn, String domain) {
+		final var domains = fqdnToDomains.get(fqdn);
+		if (domains != null) {
+			domains.remove(domain);
+			if (domains.isEmpty()) {
+				fqdnToDomains.remove(fqdn);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.devocative.keights.service;
+
+import org.devocative.keights.config.CoreDNSProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Groups the rewrites into ConfigMap keys ('keights-SHARD.rewrites'), pulled into the Corefile by one import line.
+ * The import line carries the hash of all rewrites, so the Corefile changes, and CoreDNS reloads, with any shard:
+ * the reload plugin only hashes the Corefile text, not the imported files. So a change still rewrites the Corefile
+ * key and reloads, and re-parses, the whole config; the shards only make the patch smaller.
+ */
+public class RewriteShards {
+	static final String FILE_PREFIX = "keights-";
+	static final String FILE_SUFFIX = ".rewrites";
+	static final String FILE_GLOB = FILE_PREFIX + "*" + FILE_SUFFIX;
+
+	private static final String OTHERS = "_others";
+
+	private final CoreDNSProperties.Shard config;
+
+	// ------------------------------
+
+	public RewriteShards(CoreDNSProperties.Shard config) {
+		this.config = config;
+	}
+
+	// ------------------------------
+
+	public static boolean isShardKey(String key) {
+		return key.startsWith(FILE_PREFIX) && key.endsWith(FILE_SUFFIX);
+	}
+
+	public boolean isEnabled() {
+		return config.getMode() != CoreDNSProperties.ShardMode.None;
+	}
+
+	public String shardOf(String domain, String target) {
+		final String shard;
+		if (config.getMode() == CoreDNSProperties.ShardMode.Hash) {
+			shard = String.valueOf(Math.floorMod(domain.hashCode(), Math.max(config.getBuckets(), 1)));
+		} else {
+			shard = namespaceOf(target);
+		}
+		return FILE_PREFIX + shard + FILE_SUFFIX;
+	}
+
+	/**
+	 * Shard key -> rewrites, sorted by the shard key
+	 */
+	public Map<String, Map<String, String>> group(RewriteRegistry rewriteRegistry) {
+		final var result = new TreeMap<String, Map<String, String>>();
+		rewriteRegistry.forEach((domain, target) -> result
+			.computeIfAbsent(shardOf(domain, target), k -> new LinkedHashMap<>())
+			.put(domain, target));
+		return result;
+	}
+
+	public String importLine(long rewritesHash) {
+		return String.format("import %s/%s # %016x", config.getImportPath(), FILE_GLOB, rewritesHash);
+	}
+
+	// ------------------------------
+
+	// The label before 'svc' in 'NAME.NS.svc.CLUSTER' or '.NS.svc.CLUSTER'
+	private static String namespaceOf(String target) {
+		final var end = target.indexOf(".svc.");
+		if (end > 0) {
+			final var start = target.lastIndexOf('.', end - 1);
+			final var namespace = target.substring(start + 1, end);
+			if (!namespace.isEmpty()) {
+				return namespace;
+			}
+		}
+		return OTHERS;
+	}
+}
@@ -0,0 +1,67 @@
+package org.devocative.keights.service;
+
+import io.kubernetes.client.informer.cache.Indexer;
+import io.kubernetes.client.openapi.models.V1Service;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Read access to the services in the informer caches, one indexer per watched namespace (or one for all)
+ */
+@Service
+public class ServiceCache {
+	private static final String NO_CLUSTER_IP = "None";
+
+	private final List<Indexer<V1Service>> indexers = new CopyOnWriteArrayList<>();
+
+	// ------------------------------
+
+	public void register(Indexer<V1Service> indexer) {
+		indexers.add(indexer);
+	}
+
+	public V1Service get(String namespace, String name) {
+		return get(namespace + "/" + name);
+	}
+
+	/**
+	 * By the key of the informer cache, i.e. namespace/name
+	 */
+	public V1Service get(String key) {
+		for (final var indexer : indexers) {
+			final var service = indexer.getByKey(key);
+			if (service != null) {
+				return service;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The ClusterIP of the service, or null for a headless or unknown service
+	 */
+	public String getClusterIP(String namespace, String name) {
+		return getClusterIP(namespace + "/" + name);
+	}
+
+	public String getClusterIP(String key) {
+		final var service = get(key);
+		if (service == null || service.getSpec() == null) {
+			return null;
+		}
+
+		final var clusterIP = service.getSpec().getClusterIP();
+		return clusterIP == null || clusterIP.isEmpty() || NO_CLUSTER_IP.equals(clusterIP) ? null : clusterIP;
+	}
+
+	public List<V1Service> list() {
+		final var result = new ArrayList<V1Service>();
+		for (final var indexer : indexers) {
+			result.addAll(indexer.list());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,149 @@
+package org.devocative.keights.service;
+
+import io.kubernetes.client.informer.cache.Indexer;
+import io.kubernetes.client.openapi.models.V1EndpointSlice;
+import io.kubernetes.client.openapi.models.V1Service;
+import lombok.RequiredArgsConstructor;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read access to the EndpointSlices in the informer caches, indexed by their service. If the endpoints mode is
+ * disabled, or the slices are not synced yet, every service counts as ready, so nothing is suppressed by a partial
+ * cache.
+ */
+@Service
+@RequiredArgsConstructor
+public class ServiceEndpoints {
+	public static final String SERVICE_NAME_LABEL = "kubernetes.io/service-name";
+	private static final String EXTERNAL_NAME = "ExternalName";
+	private static final String BY_SERVICE = "service";
+
+	private final CoreDNSProperties properties;
+
+	private final List<Indexer<V1EndpointSlice>> indexers = new CopyOnWriteArrayList<>();
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile boolean synced = false;
+
+	// ------------------------------
+
+	/**
+	 * The namespace/name of the service of the slice, or null if it has no service name label
+	 */
+	public static String getServiceKey(V1EndpointSlice slice) {
+		final var md = slice.getMetadata();
+		final var serviceName = md != null && md.getLabels() != null ? md.getLabels().get(SERVICE_NAME_LABEL) : null;
+		return serviceName != null ? md.getNamespace() + "/" + serviceName : null;
+	}
+
+	public static boolean hasReadyEndpoint(V1EndpointSlice slice) {
+		if (slice.getEndpoints() != null) {
+			for (final var endpoint : slice.getEndpoints()) {
+				if (isReady(endpoint.getConditions() != null ? endpoint.getConditions().getReady() : null) &&
+					endpoint.getAddresses() != null && !endpoint.getAddresses().isEmpty()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The external name of an ExternalName service, or null for other types
+	 */
+	public static String getExternalName(V1Service service) {
+		final var spec = service != null ? service.getSpec() : null;
+		return spec != null && EXTERNAL_NAME.equals(spec.getType()) ? spec.getExternalName() : null;
+	}
+
+	// ------------------------------
+
+	public boolean isEnabled() {
+		return properties.getEndpoints().isEnabled();
+	}
+
+	public void register(Indexer<V1EndpointSlice> indexer) {
+		indexer.addIndexers(Map.of(BY_SERVICE, slice -> {
+			final var key = getServiceKey(slice);
+			return key != null ? List.of(key) : List.of();
+		}));
+		indexers.add(indexer);
+	}
+
+	public void synced() {
+		synced = true;
+	}
+
+	/**
+	 * False only for a service with no ready endpoint, an ExternalName service has no endpoints and is always ready
+	 */
+	public boolean isReady(V1Service service) {
+		if (!isEnabled() || !synced || service == null || getExternalName(service) != null) {
+			return true;
+		}
+
+		final var md = service.getMetadata();
+		for (final var slice : getSlices(md.getNamespace() + "/" + md.getName())) {
+			if (hasReadyEndpoint(slice)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The ready addresses of the service, sorted and without duplicates
+	 */
+	public List<String> getReadyAddresses(String key) {
+		final var result = new TreeSet<String>();
+		for (final var slice : getSlices(key)) {
+			if (slice.getEndpoints() != null) {
+				for (final var endpoint : slice.getEndpoints()) {
+					if (isReady(endpoint.getConditions() != null ? endpoint.getConditions().getReady() : null) &&
+						endpoint.getAddresses() != null) {
+						result.addAll(endpoint.getAddresses());
+					}
+				}
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+	/**
+	 * One of the ready addresses, rotated on each call, or null if there is none or the mode is disabled
+	 */
+	public String nextReadyAddress(String key) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		final var addresses = getReadyAddresses(key);
+		return addresses.isEmpty() ? null : addresses.get(Math.floorMod(next.getAndIncrement(), addresses.size()));
+	}
+
+	// ------------------------------
+
+	private List<V1EndpointSlice> getSlices(String key) {
+		if (indexers.size() == 1) {
+			return indexers.get(0).byIndex(BY_SERVICE, key);
+		}
+
+		final var result = new ArrayList<V1EndpointSlice>();
+		for (final var indexer : indexers) {
+			result.addAll(indexer.byIndex(BY_SERVICE, key));
+		}
+		return result;
+	}
+
+	// A missing ready condition means ready, as in the EndpointSlice API
+	private static boolean isReady(Boolean ready) {
+		return ready == null || ready;
+	}
+}
@@ -0,0 +1,207 @@
+package org.devocative.keights.service;
+
+import com.google.gson.reflect.TypeToken;
+import io.kubernetes.client.informer.ListerWatcher;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceList;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Watch;
+import io.kubernetes.client.util.Watchable;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.*;
+
+/**
+ * Lists and watches the services of one namespace (or all, if namespace is null), optionally filtered by a label
+ * selector. If trimming is enabled, only the name, namespace, ClusterIP, type, external name and the given annotations
+ * are kept in the cache.
+ * A list restored from the snapshot is returned once instead of the first LIST, so the watch resumes from its
+ * resourceVersion. If that version is gone (410), the reflector restarts and the next LIST is a fresh one.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ServiceListerWatcher implements ListerWatcher<V1Service, V1ServiceList> {
+	private final CoreV1Api coreV1Api;
+	private final String namespace;
+	private final String labelSelector;
+	private final boolean trim;
+	private final Collection<String> annotations;
+
+	private volatile V1ServiceList restored;
+	private volatile boolean gone = false;
+
+	// ------------------------------
+
+	@Override
+	public V1ServiceList list(CallGeneratorParams params) throws ApiException {
+		final var snapshot = restored;
+		if (snapshot != null) {
+			restored = null;
+			log.info("Services Restored From Snapshot: namespace=[{}] resourceVersion=[{}] size=[{}]",
+				namespace, snapshot.getMetadata().getResourceVersion(), snapshot.getItems().size());
+			return snapshot;
+		}
+
+		if (gone) {
+			gone = false;
+			log.info("Services Relist, resourceVersion gone: namespace=[{}]", namespace);
+			params = new CallGeneratorParams(params.watch, null, params.timeoutSeconds);
+		}
+
+		final var list = coreV1Api
+			.getApiClient()
+			.<V1ServiceList>execute(createCall(params), V1ServiceList.class)
+			.getData();
+
+		if (trim && list.getItems() != null) {
+			final var items = new ArrayList<V1Service>(list.getItems().size());
+			for (final var item : list.getItems()) {
+				items.add(trim(item));
+			}
+			list.setItems(items);
+		}
+		return list;
+	}
+
+	@Override
+	public Watchable<V1Service> watch(CallGeneratorParams params) throws ApiException {
+		final Watchable<V1Service> watch = Watch.createWatch(
+			coreV1Api.getApiClient(),
+			createCall(params),
+			new TypeToken<Watch.Response<V1Service>>() {
+			}.getType());
+
+		return new ServiceWatch(watch);
+	}
+
+	/**
+	 * The list returned by the next LIST call instead of calling the API
+	 */
+	public void restore(V1ServiceList list) {
+		restored = list;
+	}
+
+	// ------------------------------
+
+	private Call createCall(CallGeneratorParams params) throws ApiException {
+		log.debug("Services, ListerWatcher.CallGeneratorParams: namespace=[{}], labelSelector=[{}], " +
+				"resourceVersion=[{}], timeoutSeconds=[{}], watch=[{}]",
+			namespace, labelSelector, params.resourceVersion, params.timeoutSeconds, params.watch);
+
+		if (namespace == null) {
+			return coreV1Api.listServiceForAllNamespacesCall(
+				null,
+				null,
+				null,
+				labelSelector,
+				null,
+				null,
+				params.resourceVersion,
+				null,
+				null,
+				params.timeoutSeconds,
+				params.watch,
+				null);
+		}
+
+		return coreV1Api.listNamespacedServiceCall(
+			namespace,
+			null,
+			null,
+			null,
+			null,
+			labelSelector,
+			null,
+			params.resourceVersion,
+			null,
+			null,
+			params.timeoutSeconds,
+			params.watch,
+			null);
+	}
+
+	private V1Service trim(V1Service service) {
+		final var md = service.getMetadata();
+		if (md == null) {
+			return service;
+		}
+
+		Map<String, String> kept = null;
+		if (md.getAnnotations() != null) {
+			for (final var annotation : annotations) {
+				final var value = md.getAnnotations().get(annotation);
+				if (value != null) {
+					if (kept == null) {
+						kept = new HashMap<>(2);
+					}
+					kept.put(annotation, value);
+				}
+			}
+		}
+
+		return new V1Service()
+			.apiVersion(service.getApiVersion())
+			.kind(service.getKind())
+			.metadata(new V1ObjectMeta()
+				.name(md.getName())
+				.namespace(md.getNamespace())
+				.uid(md.getUid())
+				.resourceVersion(md.getResourceVersion())
+				.annotations(kept))
+			.spec(service.getSpec() != null ?
+				new V1ServiceSpec()
+					.clusterIP(service.getSpec().getClusterIP())
+					.type(service.getSpec().getType())
+					.externalName(service.getSpec().getExternalName()) :
+				null);
+	}
+
+	// ------------------------------
+
+	private class ServiceWatch implements Watchable<V1Service> {
+		private final Watchable<V1Service> watch;
+
+		private ServiceWatch(Watchable<V1Service> watch) {
+			this.watch = watch;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return watch.hasNext();
+		}
+
+		@Override
+		public Watch.Response<V1Service> next() {
+			final var response = watch.next();
+			if (response == null) {
+				return null;
+			}
+
+			if (response.status != null && Integer.valueOf(HttpURLConnection.HTTP_GONE).equals(response.status.getCode())) {
+				log.warn("Services Watch, resourceVersion gone: namespace=[{}] message=[{}]", namespace, response.status.getMessage());
+				gone = true;
+			} else if (trim && response.object != null) {
+				response.object = trim(response.object);
+			}
+			return response;
+		}
+
+		@Override
+		public Iterator<Watch.Response<V1Service>> iterator() {
+			return this;
+		}
+
+		@Override
+		public void close() throws IOException {
+			watch.close();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.devocative.keights.service;
+
+import io.kubernetes.client.extended.controller.reconciler.Reconciler;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.extended.controller.reconciler.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.devocative.keights.config.CoreDNSProperties;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.devocative.keights.dto.EEventType.*;
+
+/**
+ * Reconciles one service key against the informer caches: the DNS records are updated, and a change of the domain
+ * annotation since the last reconcile of the key is queued as a rewrite request of every target. In the endpoints
+ * mode, a service with no ready endpoint is handled as not annotated, and a change of the external name re-renders
+ * the rewrites. The work queue never hands a key to two workers at once, so the per-key state needs no lock.
+ * A queued change is logged once for all targets, limited to 'keights.coredns.event-log-rate' lines per second.
+ */
+@Slf4j
+public class ServiceReconciler implements Reconciler {
+	private final CoreDNSProperties properties;
+	private final CoreDNSTargets targets;
+	private final ServiceCache serviceCache;
+	private final ServiceEndpoints serviceEndpoints;
+	private final DnsRecords dnsRecords;
+	private final Runnable onQueued;
+	private final LogRateLimiter eventLog;
+
+	// Service key -> domain annotation last handled
+	private final Map<String, String> handled = new ConcurrentHashMap<>();
+
+	// Service key -> external name last handled
+	private final Map<String, String> externalNames = new ConcurrentHashMap<>();
+
+	// ------------------------------
+
+	public ServiceReconciler(CoreDNSProperties properties, CoreDNSTargets targets, ServiceCache serviceCache,
+							 ServiceEndpoints serviceEndpoints, DnsRecords dnsRecords, Runnable onQueued) {
+		this.properties = properties;
+		this.targets = targets;
+		this.serviceCache = serviceCache;
+		this.serviceEndpoints = serviceEndpoints;
+		this.dnsRecords = dnsRecords;
+		this.onQueued = onQueued;
+		this.eventLog = new LogRateLimiter(properties.getEventLogRate(), Duration.ofSeconds(1));
+	}
+
+	// ------------------------------
+
+	@Override
+	public Result reconcile(Request request) {
+		final var annotation = properties.getRewriteConfig().getAnnotation();
+		final var service = serviceCache.get(request.getNamespace(), request.getName());
+		final var annotations = service != null ? service.getMetadata().getAnnotations() : null;
+		final var annotated = annotations != null ? annotations.get(annotation) : null;
+		final var key = request.getNamespace() + "/" + request.getName();
+
+		final var ready = serviceEndpoints.isReady(service);
+		if (annotated != null && !ready) {
+			log.debug("Service Not Ready, rewrite suppressed: service=[{}]", key);
+		}
+		final var domainName = ready ? annotated : null;
+		final var externalName = domainName != null && serviceEndpoints.isEnabled() ? ServiceEndpoints.getExternalName(service) : null;
+
+		// Served by the DNS responder right away, on all replicas
+		if (properties.getResponder().isEnabled()) {
+			dnsRecords.update(request.getNamespace(), request.getName(), domainName);
+		}
+
+		final var oldDomainName = handled.get(key);
+		final var event = service == null ? Deleted : oldDomainName == null ? Added : Updated;
+
+		// Same domains to another target, queued as if they were new
+		final var retarget = domainName != null && !Objects.equals(externalName, externalNames.get(key));
+		final var oldAnnotations = oldDomainName != null && !retarget ? Map.of(annotation, oldDomainName) : null;
+		final var newAnnotations = domainName != null ? Map.of(annotation, domainName) : null;
+		var queued = false;
+		for (final var target : targets.list()) {
+			queued |= target.getCoreDNSService().handleService(event, request.getName(), request.getNamespace(),
+				oldAnnotations, newAnnotations);
+		}
+
+		if (domainName != null) {
+			handled.put(key, domainName);
+		} else {
+			handled.remove(key);
+		}
+
+		if (externalName != null) {
+			externalNames.put(key, externalName);
+		} else {
+			externalNames.remove(key);
+		}
+
+		if (queued) {
+			if (log.isInfoEnabled()) {
+				final var suppressed = eventLog.acquire();
+				if (suppressed >= 0) {
+					log.info("Handle Service: queued event=[{}] service=[{}] domains=[{}] suppressed=[{}]",
+						domainName != null ? event : Deleted, key, domainName != null ? domainName : oldDomainName,
+						suppressed);
+				}
+			}
+			onQueued.run();
+		}
+		return new Result(false);
+	}
+}
@@ -0,0 +1,188 @@
+package org.devocative.keights.service;
+
+import io.kubernetes.client.openapi.models.V1ListMeta;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceList;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary snapshot of the services in the informer caches, one section per informer (namespace, or "*" for
+ * all) with the resourceVersion of its last event. It is read through a memory-mapped buffer at startup, and written
+ * to a temp file moved over the old one, so a crash never leaves a partial snapshot. A snapshot taken with another
+ * annotation, label selector or namespaces (the fingerprint), or failing the checksum, is ignored.
+ */
+@Slf4j
+public class ServiceSnapshot {
+	private static final int MAGIC = 0x4B475402;
+	private static final String EXTERNAL_NAME = "ExternalName";
+	private static final String ALL_NAMESPACES = "*";
+
+	private final Path path;
+	private final String fingerprint;
+	private final String annotation;
+
+	// ------------------------------
+
+	public ServiceSnapshot(Path path, String fingerprint, String annotation) {
+		this.path = path;
+		this.fingerprint = fingerprint;
+		this.annotation = annotation;
+	}
+
+	// ------------------------------
+
+	public static String sectionOf(String namespace) {
+		return namespace != null ? namespace : ALL_NAMESPACES;
+	}
+
+	/**
+	 * Section -> services with the resourceVersion in the list metadata, empty if there is no valid snapshot
+	 */
+	public Map<String, V1ServiceList> read() {
+		if (!Files.isRegularFile(path)) {
+			return Map.of();
+		}
+
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			final var result = decode(buffer);
+			if (result == null) {
+				log.warn("Snapshot Ignored, invalid or taken with another config: path=[{}]", path);
+				return Map.of();
+			}
+			return result;
+		} catch (IOException | RuntimeException e) {
+			log.warn("Snapshot Ignored: path=[{}] error=[{}]", path, e.toString());
+			return Map.of();
+		}
+	}
+
+	public void write(Map<String, V1ServiceList> sections) throws IOException {
+		final var temp = path.resolveSibling(path.getFileName() + ".tmp");
+		final var crc = new CRC32();
+
+		try (var out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+			out.writeInt(MAGIC);
+			writeString(out, fingerprint);
+			out.writeInt(sections.size());
+
+			for (final var entry : sections.entrySet()) {
+				final var items = entry.getValue().getItems();
+				writeString(out, entry.getKey());
+				writeString(out, entry.getValue().getMetadata().getResourceVersion());
+				out.writeInt(items.size());
+
+				for (final var service : items) {
+					final var md = service.getMetadata();
+					writeString(out, md.getNamespace());
+					writeString(out, md.getName());
+					writeString(out, md.getUid());
+					writeString(out, md.getResourceVersion());
+					writeString(out, service.getSpec() != null ? service.getSpec().getClusterIP() : null);
+					writeString(out, ServiceEndpoints.getExternalName(service));
+					writeString(out, md.getAnnotations() != null ? md.getAnnotations().get(annotation) : null);
+				}
+			}
+
+			out.flush();
+			out.writeLong(crc.getValue());
+		}
+
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// ------------------------------
+
+	private Map<String, V1ServiceList> decode(ByteBuffer buffer) {
+		if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC) {
+			return null;
+		}
+
+		final var crc = new CRC32();
+		crc.update(buffer.duplicate().limit(buffer.limit() - 8));
+		if (crc.getValue() != buffer.getLong(buffer.limit() - 8)) {
+			return null;
+		}
+
+		buffer.position(4);
+		if (!fingerprint.equals(readString(buffer))) {
+			return null;
+		}
+
+		final var result = new LinkedHashMap<String, V1ServiceList>();
+		final var sections = buffer.getInt();
+		for (int s = 0; s < sections; s++) {
+			final var section = readString(buffer);
+			final var resourceVersion = readString(buffer);
+			final var size = buffer.getInt();
+
+			final var items = new ArrayList<V1Service>(size);
+			for (int i = 0; i < size; i++) {
+				final var md = new V1ObjectMeta()
+					.namespace(readString(buffer))
+					.name(readString(buffer))
+					.uid(readString(buffer))
+					.resourceVersion(readString(buffer));
+				final var clusterIP = readString(buffer);
+				final var externalName = readString(buffer);
+				final var domainName = readString(buffer);
+				if (domainName != null) {
+					md.annotations(Map.of(annotation, domainName));
+				}
+
+				items.add(new V1Service()
+					.apiVersion("v1")
+					.kind("Service")
+					.metadata(md)
+					.spec(new V1ServiceSpec()
+						.clusterIP(clusterIP)
+						.type(externalName != null ? EXTERNAL_NAME : null)
+						.externalName(externalName)));
+			}
+
+			result.put(section, new V1ServiceList()
+				.metadata(new V1ListMeta().resourceVersion(resourceVersion))
+				.items(items));
+		}
+		return result;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			final var bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		final var length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+
+		final var bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
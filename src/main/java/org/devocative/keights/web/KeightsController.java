@@ -0,0 +1,161 @@
+package org.devocative.keights.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.service.CoreDNSTarget;
+import org.devocative.keights.service.CoreDNSTargets;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Read-only views of the in-memory model, streamed as JSON without building the whole response. Nothing here
+ * parses the Corefile. The plan briefly takes the lock of the CoreDNS service, also held by the flushes, reconciles
+ * and drift checks, to read the committed rewrites and the requests, and applies the requests outside it. The views
+ * of a target are selected by the 'target' parameter, the first target by default, an unknown one is a 404.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping(value = "/api", produces = MediaType.APPLICATION_JSON_VALUE)
+public class KeightsController {
+	private final CoreDNSTargets targets;
+	private final CoreDNSProperties properties;
+	private final ObjectMapper objectMapper;
+
+	// ------------------------------
+
+	/**
+	 * The targets with their ConfigMap and sizes
+	 */
+	@GetMapping("/targets")
+	public StreamingResponseBody getTargets() {
+		final var list = targets.list();
+
+		return out -> write(out, json -> {
+			json.writeNumberField("size", list.size());
+			json.writeArrayFieldStart("targets");
+			for (final var target : list) {
+				json.writeStartObject();
+				json.writeStringField("name", target.getName());
+				json.writeStringField("configMap", target.getConfigMapKey());
+				json.writeStringField("configMapKey", target.getProperties().getConfigMapKey());
+				json.writeNumberField("rewrites", target.getCoreDNSService().getRewritesSize());
+				json.writeNumberField("requests", target.getCoreDNSService().getRequestsSize());
+				json.writeEndObject();
+			}
+			json.writeEndArray();
+		});
+	}
+
+	/**
+	 * The rewrites in the ConfigMap
+	 */
+	@GetMapping("/rewrites")
+	public StreamingResponseBody getRewrites(@RequestParam(required = false) String target) {
+		final var rewrites = getTarget(target).getCoreDNSService().getRewrites();
+
+		return out -> write(out, json -> {
+			json.writeNumberField("size", rewrites.size());
+			json.writeObjectFieldStart("rewrites");
+			for (final var entry : rewrites.entrySet()) {
+				json.writeStringField(entry.getKey(), entry.getValue());
+			}
+			json.writeEndObject();
+		});
+	}
+
+	/**
+	 * The compacted queue, one request per service, in the order they were received
+	 */
+	@GetMapping("/requests")
+	public StreamingResponseBody getRequests(@RequestParam(required = false) String target) {
+		final var requests = getTarget(target).getCoreDNSService().getPendingRequests();
+
+		return out -> write(out, json -> {
+			json.writeNumberField("size", requests.size());
+			json.writeArrayFieldStart("requests");
+			for (final var request : requests) {
+				json.writeStartObject();
+				json.writeStringField("event", request.getEvent().name());
+				json.writeStringField("service", request.getServiceKey());
+				json.writeStringField("domainName", request.getDomainName());
+				json.writeEndObject();
+			}
+			json.writeEndArray();
+		});
+	}
+
+	/**
+	 * The rewrite diff the next flush would write
+	 */
+	@GetMapping("/plan")
+	public StreamingResponseBody getPlan(@RequestParam(required = false) String target) {
+		final var coreDNSService = getTarget(target).getCoreDNSService();
+		final var current = coreDNSService.getRewrites();
+		final var planned = coreDNSService.planRequests();
+
+		return out -> write(out, json -> {
+			json.writeBooleanField("dryRun", properties.isDryRun());
+			json.writeNumberField("requests", coreDNSService.getRequestsSize());
+
+			json.writeObjectFieldStart("added");
+			for (final var entry : planned.entrySet()) {
+				if (!current.containsKey(entry.getKey())) {
+					json.writeStringField(entry.getKey(), entry.getValue());
+				}
+			}
+			json.writeEndObject();
+
+			json.writeObjectFieldStart("removed");
+			for (final var entry : current.entrySet()) {
+				if (!planned.containsKey(entry.getKey())) {
+					json.writeStringField(entry.getKey(), entry.getValue());
+				}
+			}
+			json.writeEndObject();
+
+			json.writeObjectFieldStart("changed");
+			for (final var entry : planned.entrySet()) {
+				final var old = current.get(entry.getKey());
+				if (old != null && !old.equals(entry.getValue())) {
+					json.writeObjectFieldStart(entry.getKey());
+					json.writeStringField("from", old);
+					json.writeStringField("to", entry.getValue());
+					json.writeEndObject();
+				}
+			}
+			json.writeEndObject();
+		});
+	}
+
+	// ------------------------------
+
+	private CoreDNSTarget getTarget(String name) {
+		return targets
+			.find(name)
+			.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown target: " + name));
+	}
+
+	private void write(OutputStream out, JsonWriter writer) throws IOException {
+		try (var json = objectMapper.getFactory().createGenerator(out)) {
+			json.writeStartObject();
+			writer.write(json);
+			json.writeEndObject();
+		}
+	}
+
+	@FunctionalInterface
+	private interface JsonWriter {
+		void write(JsonGenerator json) throws IOException;
+	}
+}
@@ -1,15 +1,25 @@
 package org.devocative.keights;
 
+import io.kubernetes.client.informer.cache.Cache;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
 import org.devocative.keights.config.CoreDNSProperties;
 import org.devocative.keights.dto.RewriteRequest;
 import org.devocative.keights.iservice.ICoreDNSService;
 import org.devocative.keights.service.CoreDNSService;
+import org.devocative.keights.service.HostsCoreDNSService;
+import org.devocative.keights.service.RewriteRegistry;
+import org.devocative.keights.service.ServiceCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import static org.devocative.keights.dto.EEventType.Added;
+import static org.devocative.keights.dto.EEventType.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TestCoreDNSService {
@@ -73,7 +83,7 @@ public class TestCoreDNSService {
 			Map.of(properties.getRewriteConfig().getAnnotation(), "mytest.site.wsx"));
 
 		final var newConfig = coreDNSService
-			.processRequests(coreDNSConfig)
+			.processRequests()
 			.orElseThrow();
 		assertEquals(expectedCoreDNSConfig, newConfig);
 	}
@@ -162,7 +172,7 @@ public class TestCoreDNSService {
 			Map.of(properties.getRewriteConfig().getAnnotation(), "test.site.wsx"));
 
 		final var newConfig = coreDNSService
-			.processRequests(coreDNSConfig)
+			.processRequests()
 			.orElseThrow();
 		assertEquals(expectedCoreDNSConfig, newConfig);
 
@@ -170,4 +180,503 @@ public class TestCoreDNSService {
 			new RewriteRequest("test.site.wsx", "test", "default")));
 
 	}
+
+	@Test
+	public void test_delete() {
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var expectedCoreDNSConfig =
+			".:53 {\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+		assertEquals(1, coreDNSService.getRewritesSize());
+
+		// Two services claim the same domain, the last one wins
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, "mytest.site.wsx"));
+		coreDNSService.handleService(Added, "other", "default", Map.of(annotationKey, "mytest.site.wsx"));
+		assertTrue(coreDNSService.processRequests().isPresent());
+		coreDNSService.commitRequests();
+		assertTrue(coreDNSService.hasRewrite(new RewriteRequest("mytest.site.wsx", "other", "default")));
+
+		// Still owned by "test", so the rewrite is kept and re-targeted
+		coreDNSService.handleService(Deleted, "other", "default", Map.of(annotationKey, "mytest.site.wsx"));
+		assertTrue(coreDNSService.processRequests().isPresent());
+		coreDNSService.commitRequests();
+		assertTrue(coreDNSService.hasRewrite(new RewriteRequest("mytest.site.wsx", "test", "default")));
+
+		// Annotation removed from the last owner
+		assertFalse(coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, "mytest.site.wsx"), Map.of(annotationKey, "mytest.site.wsx")));
+		assertTrue(coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, "mytest.site.wsx"), Map.of()));
+
+		final var newConfig = coreDNSService
+			.processRequests()
+			.orElseThrow();
+		assertEquals(expectedCoreDNSConfig, newConfig);
+		assertEquals(0, coreDNSService.getRewritesSize());
+	}
+
+	@Test
+	public void test_rebase_rollback() {
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var freshCoreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name manual.site.wsx manual.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"    cache 30\n" +
+				"}";
+
+		final var expectedCoreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name manual.site.wsx manual.default.svc.cluster.local\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"    cache 30\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, "mytest.site.wsx"));
+		assertTrue(coreDNSService.processRequests().isPresent());
+
+		// Conflict: the ConfigMap was changed by someone else in the meantime
+		final var rebased = coreDNSService
+			.rebaseRequests(freshCoreDNSConfig)
+			.orElseThrow();
+		assertEquals(expectedCoreDNSConfig, rebased);
+
+		// Write failed: the requests are kept and the registry is back to the Corefile
+		coreDNSService.rollbackRequests();
+		assertEquals(1, coreDNSService.getRewritesSize());
+		assertFalse(coreDNSService.hasRewrite(new RewriteRequest("mytest.site.wsx", "test", "default")));
+
+		final var newConfig = coreDNSService
+			.processRequests()
+			.orElseThrow();
+		assertEquals(expectedCoreDNSConfig, newConfig);
+		coreDNSService.commitRequests();
+
+		// Our own write comes back through the informer
+		coreDNSService.handleCoreDNSConfigMap(Updated, newConfig);
+		assertEquals(2, coreDNSService.getRewritesSize());
+		assertTrue(coreDNSService.processRequests().isEmpty());
+	}
+
+	@Test
+	public void test_no_op() {
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, "mytest.site.wsx"));
+		assertTrue(coreDNSService.processRequests().isEmpty());
+
+		// Changed and changed back in the same flush
+		coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, "mytest.site.wsx"), Map.of(annotationKey, "other.site.wsx"));
+		coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, "other.site.wsx"), Map.of(annotationKey, "mytest.site.wsx"));
+		assertTrue(coreDNSService.processRequests().isEmpty());
+		assertTrue(coreDNSService.hasRewrite(new RewriteRequest("mytest.site.wsx", "test", "default")));
+
+		// Same content, e.g. a ConfigMap label change, keeps the state
+		coreDNSService.handleCoreDNSConfigMap(Updated, coreDNSConfig);
+		assertEquals(1, coreDNSService.getRewritesSize());
+	}
+
+	@Test
+	public void test_resource_version() {
+		final var corefileKey = properties.getConfigMapKey();
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"    }\n" +
+				"}";
+		final var editedCoreDNSConfig =
+			".:53 {\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"    }\n" +
+				"    cache 30\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+
+		coreDNSService.handleCoreDNSConfigMap(Added, Map.of(corefileKey, coreDNSConfig), "1");
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, "mytest.site.wsx"));
+		assertTrue(coreDNSService.processRequests().isPresent());
+
+		// The precondition is the version the data is rendered from, not a later one seen by the informer
+		assertEquals("1", coreDNSService.getResourceVersion());
+		coreDNSService.rebaseRequests(Map.of(corefileKey, editedCoreDNSConfig), "2").orElseThrow();
+		assertEquals("2", coreDNSService.getResourceVersion());
+
+		coreDNSService.commitRequests("3");
+		assertEquals("3", coreDNSService.getResourceVersion());
+
+		// The written version comes back with the same data
+		coreDNSService.handleCoreDNSConfigMap(Updated, Map.of(corefileKey, coreDNSConfig), "4");
+		assertEquals("4", coreDNSService.getResourceVersion());
+	}
+
+	@Test
+	public void test_same_hash_code() {
+		// "ab" and "bC" have the same String.hashCode()
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name x.site.wsx ab.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+		coreDNSService.handleService(Added, "bC", "default", Map.of(properties.getRewriteConfig().getAnnotation(), "x.site.wsx"));
+
+		final var config = coreDNSService.processRequests();
+		assertTrue(config.isPresent());
+		assertTrue(config.get().contains("rewrite name x.site.wsx bC.default.svc.cluster.local"));
+		assertNotEquals(RewriteRegistry.hash(Map.of("x.site.wsx", "ab.default.svc.cluster.local")),
+			RewriteRegistry.hash(Map.of("x.site.wsx", "bC.default.svc.cluster.local")));
+	}
+
+	@Test
+	public void test_reconcile() {
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var expectedCoreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    rewrite name other.site.wsx other.prod.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+
+		// Services synced before the ConfigMap
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, "mytest.site.wsx"));
+		coreDNSService.handleService(Added, "other", "prod", Map.of(annotationKey, "other.site.wsx"));
+		assertTrue(coreDNSService.reconcileRequests(List::of).isEmpty());
+		assertEquals(2, coreDNSService.getRequestsSize());
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+
+		// The queued requests are replaced by the desired ones from the cache
+		final var newConfig = coreDNSService
+			.reconcileRequests(() -> List.of(
+				new RewriteRequest("mytest.site.wsx", "test", "default").setEvent(Added),
+				new RewriteRequest("other.site.wsx", "other", "prod").setEvent(Added)))
+			.orElseThrow();
+		assertEquals(expectedCoreDNSConfig, newConfig);
+		assertEquals(0, coreDNSService.getRequestsSize());
+		assertEquals(2, coreDNSService.commitRequests().size());
+
+		coreDNSService.handleCoreDNSConfigMap(Updated, newConfig);
+		assertTrue(coreDNSService.reconcileRequests(() -> List.of(
+			new RewriteRequest("mytest.site.wsx", "test", "default").setEvent(Added),
+			new RewriteRequest("other.site.wsx", "other", "prod").setEvent(Added))).isEmpty());
+	}
+
+	@Test
+	public void test_drift() {
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    rewrite name other.site.wsx other.prod.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var handEditedCoreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name other.site.wsx other.prod.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var expectedCoreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}";
+
+		final var test = new RewriteRequest("mytest.site.wsx", "test", "default").setEvent(Added);
+		final var other = new RewriteRequest("other.site.wsx", "other", "prod").setEvent(Added);
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+		assertTrue(coreDNSService.reconcileRequests(() -> List.of(test, other)).isEmpty());
+		assertTrue(coreDNSService.detectDrift(List.of(test, other)).isEmpty());
+
+		// Rewrite removed by hand
+		coreDNSService.handleCoreDNSConfigMap(Updated, handEditedCoreDNSConfig);
+		var drift = coreDNSService.detectDrift(List.of(test, other));
+		assertEquals(1, drift.getMissing());
+		assertEquals(0, drift.getStale());
+
+		// Deleted event of 'other' is missed
+		drift = coreDNSService.detectDrift(List.of(test));
+		assertEquals(1, drift.getMissing());
+		assertEquals(1, drift.getStale());
+
+		final var newConfig = coreDNSService
+			.reconcileRequests(() -> List.of(test))
+			.orElseThrow();
+		assertEquals(expectedCoreDNSConfig, newConfig);
+		coreDNSService.commitRequests();
+		assertTrue(coreDNSService.detectDrift(List.of(test)).isEmpty());
+	}
+
+	@Test
+	public void test_multi_domain() {
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name old.site.wsx test.default.svc.cluster.local\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+
+		final var expectedCoreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name a.site.wsx test.default.svc.cluster.local\n" +
+				"    rewrite name b.site.wsx test.default.svc.cluster.local\n" +
+				"    rewrite name regex ^.+\\.api\\.wsx\\.?$ test.default.svc.cluster.local answer auto\n" +
+				"    rewrite name suffix .site.wsx .default.svc.cluster.local\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+		final var domains = "a.site.wsx, b.site.wsx, *.api.wsx, suffix:.site.wsx, regex:(";
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, domains));
+
+		final var newConfig = coreDNSService
+			.processRequests()
+			.orElseThrow();
+		assertEquals(expectedCoreDNSConfig, newConfig);
+		coreDNSService.commitRequests();
+		assertTrue(coreDNSService.hasRewrite(new RewriteRequest(domains, "test", "default")));
+		assertTrue(coreDNSService.detectDrift(List.of(new RewriteRequest(domains, "test", "default").setEvent(Added))).isEmpty());
+
+		// One domain removed from the list
+		coreDNSService.handleCoreDNSConfigMap(Updated, newConfig);
+		coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, domains), Map.of(annotationKey, "a.site.wsx"));
+		final var reducedConfig = coreDNSService
+			.processRequests()
+			.orElseThrow();
+		assertEquals(
+			".:53 {\n" +
+				"    rewrite name a.site.wsx test.default.svc.cluster.local\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}", reducedConfig);
+	}
+
+	@Test
+	public void test_shards() {
+		properties.getShard().setMode(CoreDNSProperties.ShardMode.Namespace);
+		coreDNSService = new CoreDNSService(properties);
+
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name old.site.wsx old.prod.svc.cluster.local\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+		final var corefileKey = properties.getConfigMapKey();
+
+		coreDNSService.handleCoreDNSConfigMap(Added, Map.of(corefileKey, coreDNSConfig));
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, "mytest.site.wsx"));
+
+		// The inline rewrite is moved to its shard
+		final var newConfig = coreDNSService
+			.processRequests()
+			.orElseThrow();
+		assertTrue(newConfig.matches("(?s)\\.:53 \\{\n    import /etc/coredns/keights-\\*\\.rewrites # \\p{XDigit}{16}\n    kubernetes .*"));
+		assertEquals(Map.of(
+			corefileKey, newConfig,
+			"keights-default.rewrites", "rewrite name mytest.site.wsx test.default.svc.cluster.local\n",
+			"keights-prod.rewrites", "rewrite name old.site.wsx old.prod.svc.cluster.local\n"), coreDNSService.getPendingData());
+
+		final var data = new HashMap<>(coreDNSService.getPendingData());
+		coreDNSService.commitRequests();
+
+		// Our own write comes back through the informer, and after a restart the shards are read back
+		coreDNSService.handleCoreDNSConfigMap(Updated, data);
+		assertTrue(coreDNSService.processRequests().isEmpty());
+
+		final var restarted = new CoreDNSService(properties);
+		restarted.handleCoreDNSConfigMap(Added, data);
+		assertEquals(2, restarted.getRewritesSize());
+		assertTrue(restarted.reconcileRequests(() -> List.of(
+			new RewriteRequest("mytest.site.wsx", "test", "default").setEvent(Added))).isEmpty());
+
+		// Only the shard of the changed service is written
+		coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, "mytest.site.wsx"), Map.of(annotationKey, "mytest.site.wsx,other.site.wsx"));
+		final var updatedConfig = coreDNSService
+			.processRequests()
+			.orElseThrow();
+		assertNotEquals(newConfig, updatedConfig);
+		assertEquals(Map.of(
+			corefileKey, updatedConfig,
+			"keights-default.rewrites",
+			"rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"rewrite name other.site.wsx test.default.svc.cluster.local\n"), coreDNSService.getPendingData());
+	}
+
+	@Test
+	public void test_plan() {
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name old.site.wsx old.default.svc.cluster.local\n" +
+				"    rewrite name mytest.site.wsx test.default.svc.cluster.local\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+
+		coreDNSService.handleCoreDNSConfigMap(Added, coreDNSConfig);
+		coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, "mytest.site.wsx"), Map.of(annotationKey, "new.site.wsx"));
+		coreDNSService.handleService(Deleted, "old", "default", Map.of(annotationKey, "old.site.wsx"));
+		assertEquals(2, coreDNSService.getPendingRequests().size());
+
+		// The plan leaves the queue and the registry as they are
+		assertEquals(Map.of("new.site.wsx", "test.default.svc.cluster.local"), coreDNSService.planRequests());
+		assertEquals(2, coreDNSService.getPendingRequests().size());
+		assertEquals(2, coreDNSService.getRewritesSize());
+
+		coreDNSService.processRequests().orElseThrow();
+		coreDNSService.commitRequests();
+		assertEquals(Map.of("new.site.wsx", "test.default.svc.cluster.local"), coreDNSService.getRewrites());
+		assertEquals(coreDNSService.getRewrites(), coreDNSService.planRequests());
+	}
+
+	@Test
+	public void test_hosts() {
+		final var properties = new CoreDNSProperties();
+		properties.setBackend(CoreDNSProperties.Backend.Hosts);
+
+		final var cache = new Cache<V1Service>();
+		cache.add(service("test", "10.96.0.10"));
+		cache.add(service("headless", "None"));
+		final var serviceCache = new ServiceCache();
+		serviceCache.register(cache);
+
+		final var coreDNSService = new HostsCoreDNSService(properties, serviceCache);
+
+		final var coreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name manual.example.org other.ns.svc.cluster.local\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+
+		// The hand-written rewrite is kept
+		final var expectedCoreDNSConfig =
+			".:53 {\n" +
+				"    rewrite name manual.example.org other.ns.svc.cluster.local\n" +
+				"    hosts /etc/coredns/keights.hosts {\n" +
+				"        ttl 30\n" +
+				"        reload 2s\n" +
+				"        fallthrough\n" +
+				"    }\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+
+		final var annotationKey = properties.getRewriteConfig().getAnnotation();
+		final var corefileKey = properties.getConfigMapKey();
+		final var hostsKey = properties.getHosts().getKey();
+
+		coreDNSService.handleCoreDNSConfigMap(Added, Map.of(corefileKey, coreDNSConfig));
+		coreDNSService.handleService(Added, "test", "default", Map.of(annotationKey, "mytest.site.wsx,suffix .site.wsx"));
+		coreDNSService.handleService(Added, "headless", "default", Map.of(annotationKey, "headless.site.wsx"));
+
+		// Only the exact rule of the service with a ClusterIP is served, the Corefile gets the hosts plugin
+		final var hosts = coreDNSService
+			.processRequests()
+			.orElseThrow();
+		assertEquals("10.96.0.10 mytest.site.wsx\n", hosts);
+		assertEquals(Map.of(corefileKey, expectedCoreDNSConfig, hostsKey, hosts), coreDNSService.getPendingData());
+
+		final var data = new HashMap<>(coreDNSService.getPendingData());
+		coreDNSService.commitRequests();
+		coreDNSService.handleCoreDNSConfigMap(Updated, data);
+		assertTrue(coreDNSService.processRequests().isEmpty());
+
+		final var restarted = new HostsCoreDNSService(properties, serviceCache);
+		restarted.handleCoreDNSConfigMap(Added, data);
+		assertEquals(1, restarted.getRewritesSize());
+		assertTrue(restarted.reconcileRequests(() -> List.of(
+			new RewriteRequest("mytest.site.wsx", "test", "default").setEvent(Added))).isEmpty());
+
+		// The Corefile is not touched anymore
+		coreDNSService.handleService(Updated, "test", "default",
+			Map.of(annotationKey, "mytest.site.wsx"), Map.of(annotationKey, "other.site.wsx"));
+		assertEquals("10.96.0.10 other.site.wsx\n", coreDNSService.processRequests().orElseThrow());
+		assertEquals(Set.of(hostsKey), coreDNSService.getPendingData().keySet());
+	}
+
+	// ------------------------------
+
+	private static V1Service service(String name, String clusterIP) {
+		return new V1Service()
+			.metadata(new V1ObjectMeta().name(name).namespace("default"))
+			.spec(new V1ServiceSpec().clusterIP(clusterIP));
+	}
 }
@@ -0,0 +1,106 @@
+package org.devocative.keights;
+
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.informer.cache.Cache;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.service.CoreDNSTargets;
+import org.devocative.keights.service.DnsRecords;
+import org.devocative.keights.service.ServiceCache;
+import org.devocative.keights.service.ServiceEndpoints;
+import org.devocative.keights.service.ServiceReconciler;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.devocative.keights.dto.EEventType.Added;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCoreDNSTargets {
+	private static final String ANNOTATION = "keights.coredns.rewrite/domain-name";
+
+	@Test
+	public void test_single_default() {
+		final var properties = new CoreDNSProperties();
+		final var targets = new CoreDNSTargets(properties, new ServiceCache());
+
+		assertEquals(1, targets.list().size());
+		assertEquals("coredns", targets.get(null).getName());
+		assertEquals("kube-system/coredns", targets.get("coredns").getConfigMapKey());
+		assertThrows(KeightsException.class, () -> targets.get("unknown"));
+		assertTrue(targets.find("unknown").isEmpty());
+	}
+
+	@Test
+	public void test_fan_out() {
+		final var properties = new CoreDNSProperties();
+		properties.setTargets(List.of(
+			target(null, "coredns", "kube-system", "Corefile"),
+			target("tenant-a", "coredns", "tenant-a", "Corefile.tenant")));
+
+		final var cache = new Cache<V1Service>();
+		final var serviceCache = new ServiceCache();
+		serviceCache.register(cache);
+		final var targets = new CoreDNSTargets(properties, serviceCache);
+		assertEquals("tenant-a", targets.getByConfigMap("tenant-a", "coredns").getName());
+
+		targets.get("coredns").getCoreDNSService().handleCoreDNSConfigMap(Added, corefile("cluster.local"));
+		targets.get("tenant-a").getCoreDNSService().handleCoreDNSConfigMap(Added, corefile("tenant.local"));
+		assertTrue(targets.isInited());
+
+		// One service event, one request per target
+		cache.add(new V1Service()
+			.metadata(new V1ObjectMeta().name("web").namespace("default").annotations(Map.of(ANNOTATION, "web.site.wsx")))
+			.spec(new V1ServiceSpec().clusterIP("10.96.0.20")));
+		final var serviceEndpoints = new ServiceEndpoints(properties);
+		new ServiceReconciler(properties, targets, serviceCache, serviceEndpoints, new DnsRecords(serviceCache, serviceEndpoints), () -> {
+		}).reconcile(new Request("default", "web"));
+		assertEquals(2, targets.getRequestsSize());
+
+		// Each target is rendered with its own cluster domain and into its own key
+		final var cluster = targets.get("coredns").getCoreDNSService();
+		assertTrue(cluster.processRequests().orElseThrow().contains("rewrite name web.site.wsx web.default.svc.cluster.local"));
+
+		final var tenant = targets.get("tenant-a").getCoreDNSService();
+		assertTrue(tenant.processRequests().orElseThrow().contains("rewrite name web.site.wsx web.default.svc.tenant.local"));
+		assertTrue(tenant.getPendingData().containsKey("Corefile.tenant"));
+	}
+
+	@Test
+	public void test_duplicate() {
+		final var properties = new CoreDNSProperties();
+		properties.setTargets(List.of(
+			target("a", "coredns", "kube-system", "Corefile"),
+			target("b", "coredns", "kube-system", "Other")));
+		assertThrows(KeightsException.class, () -> new CoreDNSTargets(properties, new ServiceCache()));
+
+		properties.setTargets(List.of(
+			target("a", "coredns", "kube-system", "Corefile"),
+			target("a", "node-local-dns", "kube-system", "Corefile")));
+		assertThrows(KeightsException.class, () -> new CoreDNSTargets(properties, new ServiceCache()));
+	}
+
+	// ------------------------------
+
+	private static CoreDNSProperties.Target target(String name, String configMap, String namespace, String key) {
+		final var target = new CoreDNSProperties.Target();
+		target.setName(name);
+		target.setConfigMap(configMap);
+		target.setConfigMapNamespace(namespace);
+		target.setConfigMapKey(key);
+		return target;
+	}
+
+	private static String corefile(String clusterDomain) {
+		return ".:53 {\n" +
+			"    errors\n" +
+			"    kubernetes " + clusterDomain + " in-addr.arpa ip6.arpa {\n" +
+			"        pods insecure\n" +
+			"    }\n" +
+			"    forward . /etc/resolv.conf\n" +
+			"}";
+	}
+}
@@ -0,0 +1,111 @@
+package org.devocative.keights;
+
+import org.devocative.keights.service.Corefile;
+import org.devocative.keights.service.RewriteRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestCorefile {
+
+	@Test
+	public void test_parse_render() {
+		final var text =
+			".:53 {\n" +
+				"    errors\n" +
+				"    rewrite name exact a.site.wsx a.default.svc.cluster.local\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"    rewrite name b.site.wsx b.default.svc.cluster.local\n" +
+				"}\n" +
+				"\n" +
+				"example.org:53 {\n" +
+				"    rewrite name manual.example.org other.ns.svc.cluster.local\n" +
+				"    forward . 8.8.8.8\n" +
+				"}\n";
+
+		final var corefile = Corefile.parse(text);
+		assertEquals("cluster.local", corefile.getClusterDomainName());
+		assertEquals(List.of(".:53", "example.org:53"), corefile.getServerBlockKeys());
+		assertEquals(Map.of(
+			"a.site.wsx", "a.default.svc.cluster.local",
+			"b.site.wsx", "b.default.svc.cluster.local"), corefile.getRewrites());
+
+		final var registry = new RewriteRegistry();
+		registry.reset(corefile.getRewrites());
+		registry.remove("a.site.wsx");
+		registry.put("c.site.wsx", "c.default.svc.cluster.local");
+
+		final var expected =
+			".:53 {\n" +
+				"    rewrite name b.site.wsx b.default.svc.cluster.local\n" +
+				"    rewrite name c.site.wsx c.default.svc.cluster.local\n" +
+				"    errors\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa {\n" +
+				"        pods insecure\n" +
+				"    }\n" +
+				"}\n" +
+				"\n" +
+				"example.org:53 {\n" +
+				"    rewrite name manual.example.org other.ns.svc.cluster.local\n" +
+				"    forward . 8.8.8.8\n" +
+				"}\n";
+
+		// The rewrite of the other block is not managed, and stays in its block
+		assertEquals(expected, corefile.render(registry));
+	}
+
+	@Test
+	public void test_rewrite_forms() {
+		final var text =
+			".:53 {\n" +
+				"    rewrite name exact a.site.wsx a.default.svc.cluster.local\n" +
+				"    rewrite name suffix .site.wsx .default.svc.cluster.local\n" +
+				"    rewrite name prefix b. b.default.svc.cluster.local # comment\n" +
+				"    rewrite name substring sub.site sub.default.svc.cluster.local\n" +
+				"    rewrite name regex ^.+\\.api\\.wsx\\.?$ api.default.svc.cluster.local  answer  auto\n" +
+				"    rewrite stop name regex (.*)\\.x\\.wsx {1}.default.svc.cluster.local\n" +
+				"    rewrite stop {\n" +
+				"        name regex (.*)\\.y\\.wsx {1}.default.svc.cluster.local\n" +
+				"        answer name (.*)\\.default\\.svc\\.cluster\\.local {1}.y.wsx\n" +
+				"    }\n" +
+				"    rewrite edns0 local set 0xffee abcd\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+
+		final var corefile = Corefile.parse(text);
+		final var expectedRewrites = new LinkedHashMap<String, String>();
+		expectedRewrites.put("a.site.wsx", "a.default.svc.cluster.local");
+		expectedRewrites.put("suffix .site.wsx", ".default.svc.cluster.local");
+		expectedRewrites.put("prefix b.", "b.default.svc.cluster.local");
+		expectedRewrites.put("substring sub.site", "sub.default.svc.cluster.local");
+		expectedRewrites.put("regex ^.+\\.api\\.wsx\\.?$", "api.default.svc.cluster.local answer auto");
+		assertEquals(expectedRewrites, corefile.getRewrites());
+
+		final var registry = new RewriteRegistry();
+		registry.reset(corefile.getRewrites());
+
+		final var expected =
+			".:53 {\n" +
+				"    rewrite name a.site.wsx a.default.svc.cluster.local\n" +
+				"    rewrite name suffix .site.wsx .default.svc.cluster.local\n" +
+				"    rewrite name prefix b. b.default.svc.cluster.local\n" +
+				"    rewrite name substring sub.site sub.default.svc.cluster.local\n" +
+				"    rewrite name regex ^.+\\.api\\.wsx\\.?$ api.default.svc.cluster.local answer auto\n" +
+				"    rewrite stop name regex (.*)\\.x\\.wsx {1}.default.svc.cluster.local\n" +
+				"    rewrite stop {\n" +
+				"        name regex (.*)\\.y\\.wsx {1}.default.svc.cluster.local\n" +
+				"        answer name (.*)\\.default\\.svc\\.cluster\\.local {1}.y.wsx\n" +
+				"    }\n" +
+				"    rewrite edns0 local set 0xffee abcd\n" +
+				"    kubernetes cluster.local in-addr.arpa ip6.arpa\n" +
+				"}";
+		assertEquals(expected, corefile.render(registry));
+		assertEquals(corefile.getRewrites(), Corefile.parse(expected).getRewrites());
+	}
+}
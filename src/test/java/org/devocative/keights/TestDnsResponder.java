@@ -0,0 +1,173 @@
+package org.devocative.keights;
+
+import io.kubernetes.client.informer.cache.Cache;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.service.DnsRecords;
+import org.devocative.keights.service.DnsResponder;
+import org.devocative.keights.service.ServiceCache;
+import org.devocative.keights.service.ServiceEndpoints;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDnsResponder {
+	private static final int TYPE_A = 1;
+	private static final int TYPE_AAAA = 28;
+
+	private DnsRecords records;
+	private DnsResponder responder;
+
+	@BeforeEach
+	public void init() {
+		final var cache = new Cache<V1Service>();
+		cache.add(service("web", "default", "10.96.0.20"));
+		cache.add(service("api", "prod", "10.96.0.30"));
+		cache.add(service("headless", "default", "None"));
+		final var serviceCache = new ServiceCache();
+		serviceCache.register(cache);
+
+		final var properties = new CoreDNSProperties();
+		records = new DnsRecords(serviceCache, new ServiceEndpoints(properties));
+		records.update("default", "web", "Web.Site.wsx");
+		records.update("prod", "api", "suffix:.prod.wsx");
+		records.update("default", "headless", "headless.site.wsx");
+
+		properties.getResponder().setBindAddress("127.0.0.1");
+		properties.getResponder().setPort(0);
+		responder = new DnsResponder(properties, records);
+		responder.start();
+	}
+
+	@AfterEach
+	public void stop() {
+		responder.stop();
+	}
+
+	@Test
+	public void test_udp() throws IOException {
+		final var answer = udp(query(7, "WEB.site.wsx", TYPE_A));
+		assertEquals(7, answer.getShort(0));
+		assertEquals(0, rcode(answer));
+		assertEquals(1, answer.getShort(6));
+		assertArrayEquals(new byte[]{10, 96, 0, 20}, Arrays.copyOfRange(answer.array(), answer.limit() - 4, answer.limit()));
+
+		final var suffix = udp(query(8, "api.prod.wsx", TYPE_A));
+		assertArrayEquals(new byte[]{10, 96, 0, 30}, Arrays.copyOfRange(suffix.array(), suffix.limit() - 4, suffix.limit()));
+
+		// Known name of another type, unknown name, and a name of a headless service
+		final var aaaa = udp(query(9, "web.site.wsx", TYPE_AAAA));
+		assertEquals(0, rcode(aaaa));
+		assertEquals(0, aaaa.getShort(6));
+		assertEquals(3, rcode(udp(query(10, "other.site.wsx", TYPE_A))));
+		assertEquals(3, rcode(udp(query(11, "headless.site.wsx", TYPE_A))));
+		assertEquals(3, rcode(udp(query(12, "x.y.prod.wsx", TYPE_A))));
+
+		// Changes are served right away
+		records.update("default", "web", "new.site.wsx");
+		assertEquals(3, rcode(udp(query(13, "web.site.wsx", TYPE_A))));
+		assertEquals(0, rcode(udp(query(14, "new.site.wsx", TYPE_A))));
+		records.update("default", "web", null);
+		assertEquals(3, rcode(udp(query(15, "new.site.wsx", TYPE_A))));
+
+		// A name longer than 253 chars is malformed
+		final var label = "a".repeat(63);
+		assertEquals(1, rcode(udp(query(16, String.join(".", label, label, label, label, "wsx"), TYPE_A))));
+	}
+
+	@Test
+	public void test_tcp_pipelined() throws IOException {
+		final var first = query(21, "web.site.wsx", TYPE_A);
+		final var second = query(22, "unknown.site.wsx", TYPE_A);
+
+		try (var socket = new Socket(InetAddress.getLoopbackAddress(), responder.getPort())) {
+			socket.setSoTimeout(2000);
+			final var request = ByteBuffer.allocate(4 + first.length + second.length);
+			request.putShort((short) first.length).put(first);
+			request.putShort((short) second.length).put(second);
+			socket.getOutputStream().write(request.array());
+
+			final var input = new DataInputStream(socket.getInputStream());
+			final var firstAnswer = readTcp(input);
+			assertEquals(21, firstAnswer.getShort(0));
+			assertEquals(0, rcode(firstAnswer));
+			assertEquals(1, firstAnswer.getShort(6));
+
+			final var secondAnswer = readTcp(input);
+			assertEquals(22, secondAnswer.getShort(0));
+			assertEquals(3, rcode(secondAnswer));
+		}
+	}
+
+	@Test
+	public void test_shared_domain() {
+		// Two services claim one domain and one suffix, the last one wins
+		records.update("default", "web", "shared.site.wsx,suffix:.shared.wsx");
+		records.update("prod", "api", "shared.site.wsx,suffix:.shared.wsx");
+		assertArrayEquals(new byte[]{10, 96, 0, 30}, records.resolve("shared.site.wsx"));
+		assertArrayEquals(new byte[]{10, 96, 0, 30}, records.resolve("api.shared.wsx"));
+
+		// Released by one, still served for the other
+		records.update("prod", "api", null);
+		assertArrayEquals(new byte[]{10, 96, 0, 20}, records.resolve("shared.site.wsx"));
+		assertArrayEquals(new byte[]{10, 96, 0, 20}, records.resolve("web.shared.wsx"));
+		assertNull(records.resolve("api.shared.wsx"));
+
+		records.update("default", "web", null);
+		assertNull(records.resolve("shared.site.wsx"));
+		assertNull(records.resolve("web.shared.wsx"));
+		assertEquals(1, records.size());
+	}
+
+	// ------------------------------
+
+	private ByteBuffer udp(byte[] query) throws IOException {
+		try (var socket = new DatagramSocket()) {
+			socket.setSoTimeout(2000);
+			socket.send(new DatagramPacket(query, query.length, InetAddress.getLoopbackAddress(), responder.getPort()));
+			final var packet = new DatagramPacket(new byte[512], 512);
+			socket.receive(packet);
+			return ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+		}
+	}
+
+	private static ByteBuffer readTcp(DataInputStream input) throws IOException {
+		final var answer = new byte[input.readUnsignedShort()];
+		input.readFully(answer);
+		return ByteBuffer.wrap(answer);
+	}
+
+	private static byte[] query(int id, String name, int type) {
+		final var buffer = ByteBuffer.allocate(512);
+		buffer.putShort((short) id).putShort((short) 0x0100).putShort((short) 1).putShort((short) 0).putInt(0);
+		for (final var label : name.split("\\.")) {
+			buffer.put((byte) label.length()).put(label.getBytes());
+		}
+		buffer.put((byte) 0).putShort((short) type).putShort((short) 1);
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	private static int rcode(ByteBuffer answer) {
+		assertTrue((answer.getShort(2) & 0x8000) != 0);
+		return answer.getShort(2) & 0xF;
+	}
+
+	private static V1Service service(String name, String namespace, String clusterIP) {
+		return new V1Service()
+			.metadata(new V1ObjectMeta().name(name).namespace(namespace))
+			.spec(new V1ServiceSpec().clusterIP(clusterIP));
+	}
+}
@@ -0,0 +1,110 @@
+package org.devocative.keights;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.devocative.keights.service.FlushDebouncer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFlushDebouncer {
+	private ThreadPoolTaskScheduler taskScheduler;
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	public void init() {
+		taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.setPoolSize(2);
+		taskScheduler.initialize();
+
+		meterRegistry = new SimpleMeterRegistry();
+	}
+
+	@AfterEach
+	public void destroy() {
+		taskScheduler.shutdown();
+	}
+
+	@Test
+	public void test_coalesce_burst() throws InterruptedException {
+		final var flushes = new AtomicInteger();
+		final var debouncer = new FlushDebouncer(taskScheduler, Duration.ofMillis(200), Duration.ofSeconds(5),
+			meterRegistry, flushes::incrementAndGet);
+
+		for (int i = 0; i < 10; i++) {
+			debouncer.signal();
+		}
+
+		waitIdle(debouncer);
+		assertEquals(1, flushes.get());
+		assertEquals(1, meterRegistry.summary("keights.flush.events").count());
+		assertEquals(10, meterRegistry.summary("keights.flush.events").totalAmount());
+	}
+
+	@Test
+	public void test_max_delay() throws InterruptedException {
+		final var flushed = new CountDownLatch(1);
+		final var debouncer = new FlushDebouncer(taskScheduler, Duration.ofMillis(200), Duration.ofMillis(400),
+			meterRegistry, flushed::countDown);
+
+		final var start = System.nanoTime();
+		while (flushed.getCount() > 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+			debouncer.signal();
+			Thread.sleep(20);
+		}
+
+		assertEquals(0, flushed.getCount());
+	}
+
+	@Test
+	public void test_follow_up_flush() throws InterruptedException {
+		final var inFlush = new CountDownLatch(1);
+		final var release = new CountDownLatch(1);
+		final var flushes = new AtomicInteger();
+		final var concurrent = new AtomicInteger();
+		final var maxConcurrent = new AtomicInteger();
+
+		final var debouncer = new FlushDebouncer(taskScheduler, Duration.ofMillis(50), Duration.ofSeconds(1),
+			meterRegistry, () -> {
+			maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			flushes.incrementAndGet();
+			inFlush.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			concurrent.decrementAndGet();
+		});
+
+		debouncer.signal();
+		assertTrue(inFlush.await(5, TimeUnit.SECONDS));
+
+		debouncer.signal();
+		debouncer.signal();
+		Thread.sleep(200);
+		assertEquals(1, flushes.get());
+
+		release.countDown();
+		waitIdle(debouncer);
+		assertEquals(2, flushes.get());
+		assertEquals(1, maxConcurrent.get());
+	}
+
+	// ------------------------------
+
+	private void waitIdle(FlushDebouncer debouncer) throws InterruptedException {
+		Thread.sleep(100);
+		final var start = System.nanoTime();
+		while (!debouncer.isIdle() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+			Thread.sleep(20);
+		}
+	}
+}
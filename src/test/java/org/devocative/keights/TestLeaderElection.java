@@ -0,0 +1,143 @@
+package org.devocative.keights;
+
+import io.kubernetes.client.extended.leaderelection.LeaderElectionRecord;
+import io.kubernetes.client.extended.leaderelection.Lock;
+import io.kubernetes.client.openapi.ApiException;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.service.LeaderElectionService;
+import org.junit.jupiter.api.Test;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLeaderElection {
+
+	@Test
+	public void test_single_leader_and_failover() throws InterruptedException {
+		final var store = new LeaseStore();
+		final var first = new LeaderElectionService(config(), new InMemoryLock(store, "first"));
+		final var second = new LeaderElectionService(config(), new InMemoryLock(store, "second"));
+
+		final var firstStarts = new AtomicInteger();
+		final var secondStarts = new AtomicInteger();
+		first.onStartLeading(firstStarts::incrementAndGet);
+		second.onStartLeading(secondStarts::incrementAndGet);
+
+		first.start();
+		await(first::isLeader, 5000);
+		second.start();
+
+		Thread.sleep(1500);
+		assertTrue(first.isLeader());
+		assertFalse(second.isLeader());
+		assertEquals(1, firstStarts.get());
+		assertEquals(0, secondStarts.get());
+
+		first.stop();
+		assertFalse(first.isLeader());
+		await(second::isLeader, 5000);
+		// The listeners run right after the flag is set
+		await(() -> secondStarts.get() == 1, 1000);
+
+		second.stop();
+	}
+
+	@Test
+	public void test_disabled() {
+		final var config = new CoreDNSProperties.LeaderElection();
+		final var service = new LeaderElectionService(config, null);
+		final var starts = new AtomicInteger();
+
+		service.start();
+		service.onStartLeading(starts::incrementAndGet);
+		assertTrue(service.isLeader());
+		assertEquals(1, starts.get());
+	}
+
+	// ------------------------------
+
+	private static CoreDNSProperties.LeaderElection config() {
+		final var config = new CoreDNSProperties.LeaderElection();
+		config.setEnabled(true);
+		config.setLeaseDuration(Duration.ofMillis(2000));
+		config.setRenewDeadline(Duration.ofMillis(1500));
+		config.setRetryPeriod(Duration.ofMillis(300));
+		return config;
+	}
+
+	private static void await(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+		final var deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timeout");
+			Thread.sleep(50);
+		}
+	}
+
+	// ------------------------------
+
+	// In-memory Lease, an update succeeds only if the record is not changed since the caller's last read
+	private static class LeaseStore {
+		private LeaderElectionRecord record;
+		private int version = 0;
+	}
+
+	private static class InMemoryLock implements Lock {
+		private final LeaseStore store;
+		private final String identity;
+		private int readVersion = -1;
+
+		private InMemoryLock(LeaseStore store, String identity) {
+			this.store = store;
+			this.identity = identity;
+		}
+
+		@Override
+		public LeaderElectionRecord get() throws ApiException {
+			synchronized (store) {
+				if (store.record == null) {
+					throw new ApiException(HttpURLConnection.HTTP_NOT_FOUND, "Not Found");
+				}
+				readVersion = store.version;
+				return store.record;
+			}
+		}
+
+		@Override
+		public boolean create(LeaderElectionRecord record) {
+			synchronized (store) {
+				if (store.record != null) {
+					return false;
+				}
+				store.record = record;
+				readVersion = ++store.version;
+				return true;
+			}
+		}
+
+		@Override
+		public boolean update(LeaderElectionRecord record) {
+			synchronized (store) {
+				if (readVersion != store.version) {
+					return false;
+				}
+				store.record = record;
+				readVersion = ++store.version;
+				return true;
+			}
+		}
+
+		@Override
+		public String identity() {
+			return identity;
+		}
+
+		@Override
+		public String describe() {
+			return "in-memory/" + identity;
+		}
+	}
+}
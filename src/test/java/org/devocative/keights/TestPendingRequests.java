@@ -0,0 +1,97 @@
+package org.devocative.keights;
+
+import org.devocative.keights.dto.RewriteRequest;
+import org.devocative.keights.service.PendingRequests;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.devocative.keights.dto.EEventType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPendingRequests {
+
+	@Test
+	public void test_compaction() {
+		final var pending = new PendingRequests();
+
+		for (int i = 0; i < 50; i++) {
+			pending.put(new RewriteRequest("flap" + i + ".site.wsx", "test", "default").setEvent(Updated));
+		}
+		pending.put(new RewriteRequest("other.site.wsx", "other", "prod").setEvent(Added));
+		pending.put(new RewriteRequest("flap.site.wsx", "test", "default").setEvent(Deleted));
+		assertEquals(2, pending.size());
+
+		final var drained = pending.drain();
+		assertTrue(pending.isEmpty());
+		assertEquals(2, drained.size());
+		assertEquals("other.site.wsx", drained.get(0).getDomainName());
+		assertEquals(Deleted, drained.get(1).getEvent());
+
+		// A newer request received during the failed flush is kept
+		final var newer = new RewriteRequest("new.site.wsx", "test", "default").setEvent(Updated);
+		pending.put(newer);
+		pending.restore(drained);
+		assertEquals(2, pending.size());
+		assertTrue(pending.drain().contains(newer));
+	}
+
+	@Test
+	public void test_concurrent_drain() throws InterruptedException {
+		final var pending = new PendingRequests();
+		final int threads = 4;
+		final int services = 1000;
+		final var start = new CountDownLatch(1);
+		final var done = new CountDownLatch(threads);
+		final var running = new AtomicBoolean(true);
+
+		final var workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final var namespace = "ns" + t;
+			final var worker = new Thread(() -> {
+				try {
+					start.await();
+					for (int i = 0; i < services; i++) {
+						pending.put(new RewriteRequest("d" + i, "svc" + i, namespace).setEvent(Added));
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+
+		final var drained = new HashMap<String, RewriteRequest>();
+		final var drainer = new Thread(() -> {
+			while (running.get()) {
+				drain(pending, drained);
+			}
+		});
+		drainer.start();
+
+		start.countDown();
+		done.await();
+		running.set(false);
+		drainer.join();
+		drain(pending, drained);
+
+		for (final var worker : workers) {
+			worker.join();
+		}
+		assertEquals(threads * services, drained.size());
+	}
+
+	// ------------------------------
+
+	private static void drain(PendingRequests pending, HashMap<String, RewriteRequest> drained) {
+		final List<RewriteRequest> requests = pending.drain();
+		requests.forEach(request -> drained.put(request.getServiceKey(), request));
+	}
+}
@@ -0,0 +1,51 @@
+package org.devocative.keights;
+
+import org.devocative.keights.dto.RewriteDiff;
+import org.devocative.keights.service.LogRateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRewriteDiff {
+
+	@Test
+	public void test_diff() {
+		final var before = Map.of(
+			"a.site.wsx", "a.default.svc.cluster.local",
+			"b.site.wsx", "b.default.svc.cluster.local",
+			"c.site.wsx", "c.default.svc.cluster.local");
+		final var after = Map.of(
+			"a.site.wsx", "a.default.svc.cluster.local",
+			"b.site.wsx", "b.prod.svc.cluster.local",
+			"d.site.wsx", "d.default.svc.cluster.local");
+
+		final var diff = RewriteDiff.of(before, after, 10);
+		assertEquals(1, diff.getAdded());
+		assertEquals(1, diff.getRemoved());
+		assertEquals(1, diff.getChanged());
+		assertTrue(diff.toString().contains("~b.site.wsx -> b.prod.svc.cluster.local"));
+		assertTrue(diff.toString().contains("-c.site.wsx -> c.default.svc.cluster.local"));
+
+		assertTrue(RewriteDiff.of(before, before, 10).isEmpty());
+		assertTrue(RewriteDiff.of(Map.of(), after, 1).toString().endsWith(", ... 2 more]"));
+	}
+
+	@Test
+	public void test_rate_limiter() {
+		final var now = new AtomicLong();
+		final var limiter = new LogRateLimiter(2, Duration.ofSeconds(1), now::get);
+
+		assertEquals(0, limiter.acquire());
+		assertEquals(0, limiter.acquire());
+		assertEquals(-1, limiter.acquire());
+		assertEquals(-1, limiter.acquire());
+
+		now.addAndGet(Duration.ofSeconds(1).toNanos());
+		assertEquals(2, limiter.acquire());
+		assertEquals(0, limiter.acquire());
+	}
+}
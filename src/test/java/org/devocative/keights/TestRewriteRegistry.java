@@ -0,0 +1,61 @@
+package org.devocative.keights;
+
+import org.devocative.keights.service.RewriteRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRewriteRegistry {
+	private RewriteRegistry registry;
+
+	@BeforeEach
+	public void init() {
+		registry = new RewriteRegistry();
+	}
+
+	@Test
+	public void test_put_remove() {
+		registry.put("a.site.wsx", "a.default.svc.cluster.local");
+		registry.put("b.site.wsx", "a.default.svc.cluster.local");
+		assertEquals(2, registry.size());
+		assertEquals(Set.of("a.site.wsx", "b.site.wsx"), registry.getDomains("a.default.svc.cluster.local"));
+
+		registry.put("b.site.wsx", "b.default.svc.cluster.local");
+		assertEquals(Set.of("a.site.wsx"), registry.getDomains("a.default.svc.cluster.local"));
+		assertEquals(Set.of("b.site.wsx"), registry.getDomains("b.default.svc.cluster.local"));
+
+		assertEquals("a.default.svc.cluster.local", registry.remove("a.site.wsx"));
+		assertTrue(registry.getDomains("a.default.svc.cluster.local").isEmpty());
+		assertNull(registry.remove("a.site.wsx"));
+		assertEquals(1, registry.size());
+	}
+
+	@Test
+	public void test_assign_unassign() {
+		registry.reset(Map.of("old.site.wsx", "test.default.svc.cluster.local"));
+
+		assertTrue(registry.assign("default/test", "test.default.svc.cluster.local", Set.of("new.site.wsx")));
+		assertEquals(1, registry.size());
+		assertNull(registry.get("old.site.wsx"));
+		assertTrue(registry.contains("new.site.wsx", "test.default.svc.cluster.local"));
+		assertFalse(registry.assign("default/test", "test.default.svc.cluster.local", Set.of("new.site.wsx")));
+
+		assertTrue(registry.assign("default/foo", "foo.default.svc.cluster.local", Set.of("new.site.wsx")));
+		assertEquals(Set.of("default/test", "default/foo"), registry.getOwners("new.site.wsx"));
+		assertTrue(registry.contains("new.site.wsx", "foo.default.svc.cluster.local"));
+
+		registry.reset(registry.snapshot());
+		assertEquals(Set.of("new.site.wsx"), registry.getOwnedDomains("default/foo"));
+
+		assertTrue(registry.unassign("default/foo", "foo.default.svc.cluster.local"));
+		assertTrue(registry.contains("new.site.wsx", "test.default.svc.cluster.local"));
+
+		assertTrue(registry.unassign("default/test", "test.default.svc.cluster.local"));
+		assertEquals(0, registry.size());
+		assertTrue(registry.getOwners("new.site.wsx").isEmpty());
+	}
+}
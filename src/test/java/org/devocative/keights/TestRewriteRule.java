@@ -0,0 +1,42 @@
+package org.devocative.keights;
+
+import org.devocative.keights.dto.ERewriteType;
+import org.devocative.keights.dto.RewriteRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRewriteRule {
+
+	@Test
+	public void test_parse() {
+		final var invalid = new ArrayList<KeightsException>();
+		final var rules = RewriteRule.parseAll(
+			"a.site.wsx, exact:b.site.wsx,suffix:.site.wsx, *.api.wsx, regex:^c\\.wsx\\.?$, regex:(a, bad value,",
+			invalid::add);
+
+		assertEquals(List.of(
+			new RewriteRule(ERewriteType.Exact, "a.site.wsx"),
+			new RewriteRule(ERewriteType.Exact, "b.site.wsx"),
+			new RewriteRule(ERewriteType.Suffix, ".site.wsx"),
+			new RewriteRule(ERewriteType.Regex, "^.+\\.api\\.wsx\\.?$"),
+			new RewriteRule(ERewriteType.Regex, "^c\\.wsx\\.?$")), rules);
+		assertEquals(2, invalid.size());
+
+		assertEquals("a.site.wsx", rules.get(0).getKey());
+		assertEquals("suffix .site.wsx", rules.get(2).getKey());
+		assertEquals("test.default.svc.cluster.local", rules.get(0).toTarget("test", "default", "cluster.local"));
+		assertEquals(".default.svc.cluster.local", rules.get(2).toTarget("test", "default", "cluster.local"));
+		assertEquals("test.default.svc.cluster.local answer auto", rules.get(3).toTarget("test", "default", "cluster.local"));
+
+		final var wildcard = Pattern.compile(rules.get(3).getPattern());
+		assertTrue(wildcard.matcher("x.api.wsx.").matches());
+		assertTrue(wildcard.matcher("x.y.api.wsx").matches());
+		assertFalse(wildcard.matcher("api.wsx.").matches());
+		assertFalse(wildcard.matcher("x.apixwsx.").matches());
+	}
+}
@@ -0,0 +1,32 @@
+package org.devocative.keights;
+
+import io.kubernetes.client.custom.IntOrString;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1ServicePort;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRuntimeHints {
+
+	@Test
+	public void test_nested_models() {
+		final var hints = new RuntimeHints();
+		new KeightsRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+		final var reflection = RuntimeHintsPredicates.reflection();
+		assertTrue(reflection.onType(V1ServiceSpec.class).withMemberCategory(MemberCategory.DECLARED_FIELDS).test(hints));
+		assertTrue(reflection.onType(V1ObjectMeta.class).withMemberCategory(MemberCategory.DECLARED_FIELDS).test(hints));
+
+		// In a List field, and the @JsonAdapter of a field type
+		assertTrue(reflection.onType(V1ServicePort.class).withMemberCategory(MemberCategory.DECLARED_FIELDS).test(hints));
+		assertTrue(reflection.onType(IntOrString.IntOrStringAdapter.class).withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+
+		assertFalse(reflection.onType(String.class).test(hints));
+		assertTrue(RuntimeHintsPredicates.resource().forResource("okhttp3/internal/publicsuffix/publicsuffixes.gz").test(hints));
+	}
+}
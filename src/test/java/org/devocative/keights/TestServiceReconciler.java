@@ -0,0 +1,202 @@
+package org.devocative.keights;
+
+import io.kubernetes.client.extended.controller.DefaultController;
+import io.kubernetes.client.extended.controller.reconciler.Request;
+import io.kubernetes.client.extended.controller.reconciler.Result;
+import io.kubernetes.client.extended.workqueue.DefaultRateLimitingQueue;
+import io.kubernetes.client.extended.workqueue.ratelimiter.ItemExponentialFailureRateLimiter;
+import io.kubernetes.client.informer.cache.Cache;
+import io.kubernetes.client.openapi.models.V1Endpoint;
+import io.kubernetes.client.openapi.models.V1EndpointConditions;
+import io.kubernetes.client.openapi.models.V1EndpointSlice;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import org.devocative.keights.config.CoreDNSProperties;
+import org.devocative.keights.iservice.ICoreDNSService;
+import org.devocative.keights.service.CoreDNSTargets;
+import org.devocative.keights.service.DnsRecords;
+import org.devocative.keights.service.ServiceCache;
+import org.devocative.keights.service.ServiceEndpoints;
+import org.devocative.keights.service.ServiceReconciler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.devocative.keights.dto.EEventType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestServiceReconciler {
+	private static final String ANNOTATION = "keights.coredns.rewrite/domain-name";
+
+	private CoreDNSProperties properties;
+	private Cache<V1Service> cache;
+	private Cache<V1EndpointSlice> slices;
+	private ServiceEndpoints serviceEndpoints;
+	private ICoreDNSService coreDNSService;
+	private DnsRecords dnsRecords;
+	private ServiceReconciler reconciler;
+	private AtomicInteger queued;
+
+	@BeforeEach
+	public void init() {
+		properties = new CoreDNSProperties();
+		properties.getResponder().setEnabled(true);
+
+		cache = new Cache<>();
+		final var serviceCache = new ServiceCache();
+		serviceCache.register(cache);
+
+		slices = new Cache<>();
+		serviceEndpoints = new ServiceEndpoints(properties);
+		serviceEndpoints.register(slices);
+
+		final var targets = new CoreDNSTargets(properties, serviceCache);
+		coreDNSService = targets.get(null).getCoreDNSService();
+		dnsRecords = new DnsRecords(serviceCache, serviceEndpoints);
+		queued = new AtomicInteger();
+		reconciler = new ServiceReconciler(properties, targets, serviceCache, serviceEndpoints, dnsRecords, queued::incrementAndGet);
+	}
+
+	@Test
+	public void test_level_based() {
+		final var request = new Request("default", "web");
+
+		// Not in the cache yet, e.g. a stale key
+		assertFalse(reconciler.reconcile(request).isRequeue());
+		assertEquals(0, queued.get());
+
+		cache.add(service("web", "default", "web.site.wsx"));
+		reconciler.reconcile(request);
+		assertEquals(1, queued.get());
+		assertEquals(Added, coreDNSService.getPendingRequests().get(0).getEvent());
+		assertNotNull(dnsRecords.resolve("web.site.wsx"));
+
+		// Same state again, e.g. a resync or a duplicate event
+		reconciler.reconcile(request);
+		assertEquals(1, queued.get());
+
+		cache.update(service("web", "default", "new.site.wsx"));
+		reconciler.reconcile(request);
+		assertEquals(2, queued.get());
+		assertEquals(1, coreDNSService.getRequestsSize());
+		assertEquals("new.site.wsx", coreDNSService.getPendingRequests().get(0).getDomainName());
+		assertNull(dnsRecords.resolve("web.site.wsx"));
+
+		cache.delete(service("web", "default", "new.site.wsx"));
+		reconciler.reconcile(request);
+		assertEquals(3, queued.get());
+		assertEquals(Deleted, coreDNSService.getPendingRequests().get(0).getEvent());
+		assertNull(dnsRecords.resolve("new.site.wsx"));
+	}
+
+	@Test
+	public void test_endpoints() {
+		properties.getEndpoints().setEnabled(true);
+		serviceEndpoints.synced();
+		coreDNSService.handleCoreDNSConfigMap(Added, ".:53 {\n    kubernetes cluster.local in-addr.arpa {\n    }\n}");
+
+		// No ready endpoint, nothing is queued or served
+		final var request = new Request("default", "web");
+		cache.add(service("web", "default", "web.site.wsx"));
+		slices.add(slice("web-abc", "web", false, "10.0.0.1"));
+		reconciler.reconcile(request);
+		assertEquals(0, queued.get());
+		assertNull(dnsRecords.resolve("web.site.wsx"));
+
+		slices.update(slice("web-abc", "web", true, "10.0.0.1"));
+		reconciler.reconcile(request);
+		assertEquals(1, queued.get());
+		assertEquals(Added, coreDNSService.getPendingRequests().get(0).getEvent());
+		assertNotNull(dnsRecords.resolve("web.site.wsx"));
+
+		slices.delete(slice("web-abc", "web", true, "10.0.0.1"));
+		reconciler.reconcile(request);
+		assertEquals(2, queued.get());
+		assertEquals(Deleted, coreDNSService.getPendingRequests().get(0).getEvent());
+		assertNull(dnsRecords.resolve("web.site.wsx"));
+		coreDNSService.processRequests();
+		coreDNSService.commitRequests();
+
+		// A headless service is served with its ready endpoints in turn
+		final var db = new Request("default", "db");
+		cache.add(service("db", "default", "db.site.wsx").spec(new V1ServiceSpec().clusterIP("None")));
+		slices.add(slice("db-abc", "db", true, "10.0.0.2", "10.0.0.3"));
+		reconciler.reconcile(db);
+		assertArrayEquals(new byte[]{10, 0, 0, 2}, dnsRecords.resolve("db.site.wsx"));
+		assertArrayEquals(new byte[]{10, 0, 0, 3}, dnsRecords.resolve("db.site.wsx"));
+
+		// An ExternalName service has no endpoints, it is rewritten to its external name
+		final var ext = new Request("default", "ext");
+		cache.add(service("ext", "default", "ext.site.wsx").spec(new V1ServiceSpec().type("ExternalName").externalName("ext.example.com")));
+		reconciler.reconcile(ext);
+		assertEquals(Map.of("db.site.wsx", "db.default.svc.cluster.local", "ext.site.wsx", "ext.example.com"), coreDNSService.planRequests());
+
+		// A new external name re-renders the same domains
+		coreDNSService.processRequests();
+		coreDNSService.commitRequests();
+		cache.update(service("ext", "default", "ext.site.wsx").spec(new V1ServiceSpec().type("ExternalName").externalName("new.example.com")));
+		reconciler.reconcile(ext);
+		assertEquals("new.example.com", coreDNSService.planRequests().get("ext.site.wsx"));
+	}
+
+	@Test
+	public void test_failed_key_does_not_block_others() throws InterruptedException {
+		final var attempts = new ConcurrentHashMap<String, AtomicInteger>();
+		final var done = new CountDownLatch(2);
+		final var order = new ConcurrentHashMap<String, Integer>();
+
+		final var controller = new DefaultController("test", request -> {
+			final var attempt = attempts.computeIfAbsent(request.getName(), k -> new AtomicInteger()).incrementAndGet();
+			if (request.getName().equals("bad") && attempt < 3) {
+				throw new IllegalStateException("failed");
+			}
+			order.put(request.getName(), order.size());
+			done.countDown();
+			return new Result(false);
+		}, new DefaultRateLimitingQueue<>(Executors.newSingleThreadExecutor(),
+			new ItemExponentialFailureRateLimiter<>(Duration.ofMillis(50), Duration.ofSeconds(1))));
+		controller.setWorkerCount(1);
+		controller.setWorkerThreadPool(Executors.newScheduledThreadPool(1));
+
+		final var thread = new Thread(controller::run);
+		thread.start();
+		try {
+			for (final var name : List.of("bad", "good")) {
+				controller.getWorkQueue().add(new Request("default", name));
+			}
+
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(Map.of("good", 0, "bad", 1), order);
+			assertEquals(3, attempts.get("bad").get());
+			assertEquals(1, attempts.get("good").get());
+		} finally {
+			controller.shutdown();
+		}
+	}
+
+	// ------------------------------
+
+	private static V1EndpointSlice slice(String name, String service, boolean ready, String... addresses) {
+		return new V1EndpointSlice()
+			.metadata(new V1ObjectMeta().name(name).namespace("default").labels(Map.of(ServiceEndpoints.SERVICE_NAME_LABEL, service)))
+			.addressType("IPv4")
+			.endpoints(List.of(new V1Endpoint()
+				.addresses(List.of(addresses))
+				.conditions(new V1EndpointConditions().ready(ready))));
+	}
+
+	private static V1Service service(String name, String namespace, String domainName) {
+		return new V1Service()
+			.metadata(new V1ObjectMeta().name(name).namespace(namespace).annotations(Map.of(ANNOTATION, domainName)))
+			.spec(new V1ServiceSpec().clusterIP("10.96.0.20"));
+	}
+}
@@ -0,0 +1,88 @@
+package org.devocative.keights;
+
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1ListMeta;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1Service;
+import io.kubernetes.client.openapi.models.V1ServiceList;
+import io.kubernetes.client.openapi.models.V1ServiceSpec;
+import io.kubernetes.client.util.CallGeneratorParams;
+import org.devocative.keights.service.ServiceListerWatcher;
+import org.devocative.keights.service.ServiceSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestServiceSnapshot {
+	private static final String ANNOTATION = "keights.coredns.rewrite/domain-name";
+
+	@Test
+	public void test_write_read(@TempDir Path dir) throws IOException {
+		final var path = dir.resolve("keights.snapshot");
+		final var snapshot = new ServiceSnapshot(path, "config-1", ANNOTATION);
+		assertTrue(snapshot.read().isEmpty());
+
+		snapshot.write(Map.of(
+			"*", list("1200",
+				service("web", "default", "10.96.0.20", "web.site.wsx"),
+				service("plain", "default", "10.96.0.21", null))));
+
+		final var read = snapshot.read();
+		assertEquals(1, read.size());
+		final var list = read.get("*");
+		assertEquals("1200", list.getMetadata().getResourceVersion());
+		assertEquals(2, list.getItems().size());
+
+		final var web = list.getItems().get(0);
+		assertEquals("web", web.getMetadata().getName());
+		assertEquals("default", web.getMetadata().getNamespace());
+		assertEquals("rv-web", web.getMetadata().getResourceVersion());
+		assertEquals("10.96.0.20", web.getSpec().getClusterIP());
+		assertEquals(Map.of(ANNOTATION, "web.site.wsx"), web.getMetadata().getAnnotations());
+		assertNull(list.getItems().get(1).getMetadata().getAnnotations());
+
+		// Another config, or a corrupted file, is ignored
+		assertTrue(new ServiceSnapshot(path, "config-2", ANNOTATION).read().isEmpty());
+
+		final var bytes = Files.readAllBytes(path);
+		bytes[bytes.length / 2] ^= 0x55;
+		Files.write(path, bytes);
+		assertTrue(snapshot.read().isEmpty());
+	}
+
+	@Test
+	public void test_restored_list() throws ApiException {
+		final var listerWatcher = new ServiceListerWatcher(null, "default", null, false, List.of(ANNOTATION));
+		final var restored = list("1200", service("web", "default", "10.96.0.20", "web.site.wsx"));
+		listerWatcher.restore(restored);
+
+		// Returned by the first LIST without calling the API server
+		assertSame(restored, listerWatcher.list(new CallGeneratorParams(false, null, null)));
+	}
+
+	// ------------------------------
+
+	private static V1ServiceList list(String resourceVersion, V1Service... services) {
+		return new V1ServiceList()
+			.metadata(new V1ListMeta().resourceVersion(resourceVersion))
+			.items(List.of(services));
+	}
+
+	private static V1Service service(String name, String namespace, String clusterIP, String domainName) {
+		return new V1Service()
+			.metadata(new V1ObjectMeta()
+				.name(name)
+				.namespace(namespace)
+				.uid("uid-" + name)
+				.resourceVersion("rv-" + name)
+				.annotations(domainName != null ? Map.of(ANNOTATION, domainName) : null))
+			.spec(new V1ServiceSpec().clusterIP(clusterIP));
+	}
+}